@@ -95,14 +95,15 @@ public class CompositeWritableBuffer implements WritableBuffer
         else
         {
             int j = 3;
-            while(_first.hasRemaining() && j != 0)
+            while(_first.hasRemaining() && j >= 0)
             {
                 _first.put((byte)(i >>> (8*j)));
                 j--;
             }
-            while(j != 0)
+            while(j >= 0)
             {
                 _second.put((byte)(i >>> (8*j)));
+                j--;
             }
         }
     }
@@ -116,14 +117,15 @@ public class CompositeWritableBuffer implements WritableBuffer
         else
         {
             int j = 7;
-            while(_first.hasRemaining() && j != 0)
+            while(_first.hasRemaining() && j >= 0)
             {
                 _first.put((byte)(l >>> (8*j)));
                 j--;
             }
-            while(j != 0)
+            while(j >= 0)
             {
                 _second.put((byte)(l >>> (8*j)));
+                j--;
             }
         }
     }
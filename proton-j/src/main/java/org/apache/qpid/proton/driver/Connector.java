@@ -35,9 +35,24 @@ public interface Connector<C>
      * Handle any inbound data, outbound data, or timing events pending on
      * the connector.
      *
+     * Reading stops while the transport reports no input capacity, and
+     * resumes on the first call after the application has read enough of
+     * the buffered deliveries.
+     *
      */
     void process();
 
+    /** Run a command from the thread that services this connector.
+     *
+     * May be called from any thread. Commands are queued without locking
+     * and run in order during the next {@link #process()}, before output is
+     * written, so they can safely send or settle on the connection. A burst
+     * of commands wakes the driver loop at most once.
+     *
+     * @param command the command to run
+     */
+    void execute(Runnable command);
+
     /** Access the listener which opened this connector.
      *
      * @return the listener which created this connector, or NULL if the
@@ -84,6 +99,18 @@ public interface Connector<C>
      */
     void setContext(C context);
 
+    /** Set how output is coalesced before it is written to the socket.
+     *
+     * Output is held back until at least threshold bytes are pending or the oldest pending byte
+     * has waited for the deadline, whichever comes first. A deadline of zero writes output as
+     * soon as it is produced. The defaults come from the pn.flush_threshold and
+     * pn.flush_deadline_us system properties, and are to write immediately.
+     *
+     * @param threshold the number of pending bytes which are written without delay
+     * @param deadline the longest time in microseconds that output may be held back
+     */
+    void setFlushPolicy(int threshold, long deadline);
+
     /** Close the socket used by the connector.
      *
      */
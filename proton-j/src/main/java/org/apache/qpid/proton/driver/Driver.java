@@ -37,22 +37,8 @@ import java.nio.channels.ServerSocketChannel;
  * over TCP.
  */
 
-public interface Driver
+public interface Driver extends DriverLoop
 {
-    /**
-     * Force wait() to return
-     *
-     */
-    void wakeup();
-
-    /**
-     * Wait for an active connector or listener
-     *
-     * @param timeout maximum time in milliseconds to wait.
-     *                0 means infinite wait
-     */
-    void doWait(int timeout);
-
     /**
      * Get the next listener with pending data in the driver.
      *
@@ -62,15 +48,16 @@ public interface Driver
     Listener listener();
 
     /**
-     * Get the next active connector in the driver.
+     * Get the I/O loops that new connectors are spread across.
      *
-     * Returns the next connector with pending inbound data, available capacity
-     * for outbound data, or pending tick.
+     * A driver with a single loop is its own loop, and services its
+     * listeners and connectors from one selector. Otherwise the driver
+     * itself only waits for listeners, and each returned loop should be
+     * driven by a thread of its own.
      *
-     * @return NULL if no active connector available
+     * @return the loops of this driver
      */
-    @SuppressWarnings("rawtypes")
-    Connector connector();
+    DriverLoop[] getLoops();
 
     /**
      * Destruct the driver and all associated listeners, connectors and other resources.
@@ -80,8 +67,10 @@ public interface Driver
     /**
      * Construct a listener for the given address.
      *
-     * @param host local host address to listen on
-     * @param port local port to listen on
+     * @param host local host address to listen on, or the absolute path of a Unix domain
+     *             socket to create (which needs Java 16 or later, and is left in place when
+     *             the listener is closed)
+     * @param port local port to listen on, ignored for a Unix domain socket
      * @param context application-supplied, can be accessed via
      *                {@link Listener#getContext() getContext()} method on a listener.
      * @return a new listener on the given host:port, NULL if error
@@ -101,8 +90,9 @@ public interface Driver
     /**
      * Construct a connector to the given remote address.
      *
-     * @param host remote host to connect to.
-     * @param port remote port to connect to.
+     * @param host remote host to connect to, or the absolute path of a Unix domain socket
+     *             (which needs Java 16 or later).
+     * @param port remote port to connect to, ignored for a Unix domain socket.
      * @param context application-supplied, can be accessed via
      *                {@link Connector#getContext() getContext()} method on a listener.
      *
@@ -0,0 +1,64 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.driver;
+
+/**
+ * An I/O loop of a driver.
+ * Each loop waits on its own selector and services its own set of
+ * connectors. A connector, and the engine state of its connection, must
+ * only be used from the one thread that drives its loop; different loops
+ * may be driven by different threads in parallel.
+ */
+public interface DriverLoop
+{
+    /**
+     * Force wait() to return
+     *
+     */
+    void wakeup();
+
+    /**
+     * Wait for an active connector or listener
+     *
+     * @param timeout maximum time in milliseconds to wait.
+     *                0 means infinite wait
+     */
+    void doWait(int timeout);
+
+    /**
+     * Get the next active connector in the loop.
+     *
+     * Returns the next connector with pending inbound data, available capacity
+     * for outbound data, or pending tick. A connector newly assigned to the
+     * loop is returned once before any I/O has been done on it, so that
+     * it can be set up from the loop's thread.
+     *
+     * @return NULL if no active connector available
+     */
+    @SuppressWarnings("rawtypes")
+    Connector connector();
+
+    /**
+     * @return the number of open connectors serviced by this loop
+     */
+    int getConnectorCount();
+}
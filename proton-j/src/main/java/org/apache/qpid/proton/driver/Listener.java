@@ -30,6 +30,10 @@ public interface Listener<C>
     /**
      * Accept a connection that is pending on the listener.
      *
+     * If the driver has several loops the connector is handed to one of
+     * them, and should be set up when that loop returns it from
+     * {@link DriverLoop#connector()} rather than by the accepting thread.
+     *
      * @return a new connector for the remote, or NULL on error.
      */
     Connector<C> accept();
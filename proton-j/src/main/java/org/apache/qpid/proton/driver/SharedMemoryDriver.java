@@ -0,0 +1,58 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.driver;
+
+import java.io.File;
+
+/**
+ * A driver for connections between processes on one host, made through a shared file rather
+ * than a socket. It has no listeners: the server creates the file and the client opens it.
+ * The driver is a single loop, servicing every connector it creates.
+ */
+public interface SharedMemoryDriver extends DriverLoop
+{
+    /**
+     * Destruct the driver and all associated connectors and other resources.
+     */
+    void destroy();
+
+    /**
+     * Creates the shared file, replacing any left by an earlier connection, and accepts the
+     * connection from the client which opens it.
+     *
+     * @param file the file to share with the client
+     * @param context application-supplied, can be accessed via
+     *                {@link Connector#getContext() getContext()} method on a connector.
+     * @return a new connector, or NULL on error
+     */
+    <C> Connector<C> createServerConnector(File file, C context);
+
+    /**
+     * Opens a file created by {@link #createServerConnector(File, Object)}.
+     *
+     * @param file the file shared with the server
+     * @param context application-supplied, can be accessed via
+     *                {@link Connector#getContext() getContext()} method on a connector.
+     * @return a new connector, or NULL on error
+     */
+    <C> Connector<C> createConnector(File file, C context);
+}
@@ -0,0 +1,418 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.Sasl.SaslState;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.engine.impl.SaslImpl;
+import org.apache.qpid.proton.engine.impl.TransportFactory;
+
+/**
+ * The protocol side of a connector: moves bytes between its buffers and the SASL layer and
+ * transport. Subclasses move them between the buffers and the socket.
+ */
+abstract class AbstractConnectorImpl<C> implements Connector<C>
+{
+    public static int END_OF_STREAM = -1;
+    static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static int readBufferSize = Integer.getInteger
+        ("pn.receive_buffer_size", DEFAULT_BUFFER_SIZE);
+    private static int writeBufferSize = Integer.getInteger
+        ("pn.send_buffer_size", DEFAULT_BUFFER_SIZE);
+    private static int flushThreshold = Integer.getInteger
+        ("pn.flush_threshold", 32 * 1024);
+    private static long flushDeadline = Long.getLong
+        ("pn.flush_deadline_us", 0L);
+    private static int commandBatchSize = Integer.getInteger
+        ("pn.command_batch_size", 1024);
+
+    enum ConnectorState {UNINITIALIZED, OPENED, EOS, CLOSED};
+
+    private final Sasl _sasl;
+    private final Listener<C> _listener;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private C _context;
+
+    private Connection _connection;
+    private volatile ConnectorState _state = ConnectorState.UNINITIALIZED;
+
+    private final RingBuffer _readBuffer = new RingBuffer(readBufferSize);
+    private final RingBuffer _writeBuffer = new RingBuffer(writeBufferSize);
+    private Transport _transport = null;
+
+    private int _flushThreshold = flushThreshold;
+    private long _flushDeadline = flushDeadline;
+
+    private final Queue<Runnable> _commands = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean _commandsScheduled = new AtomicBoolean();
+
+    AbstractConnectorImpl(Listener<C> listener, Sasl sasl, C context)
+    {
+        _listener = listener;
+        _sasl = sasl;
+        _context = context;
+    }
+
+    RingBuffer getReadBuffer()
+    {
+        return _readBuffer;
+    }
+
+    RingBuffer getWriteBuffer()
+    {
+        return _writeBuffer;
+    }
+
+    ConnectorState getState()
+    {
+        return _state;
+    }
+
+    void setState(ConnectorState newState)
+    {
+        if (newState == ConnectorState.CLOSED && _state != ConnectorState.CLOSED)
+        {
+            connectorClosed();
+        }
+        _state = newState;
+    }
+
+    /**
+     * Called once when the connector becomes closed.
+     */
+    abstract void connectorClosed();
+
+    abstract void closeChannel() throws IOException;
+
+    /**
+     * Arranges for {@link #process()} to be called soon, from the thread that services this
+     * connector, so that queued commands are run.
+     */
+    abstract void scheduleCommands();
+
+    public void execute(Runnable command)
+    {
+        _commands.add(command);
+        // only the first command since the queue was last drained needs to wake the loop
+        if (_commandsScheduled.compareAndSet(false, true))
+        {
+            scheduleCommands();
+        }
+    }
+
+    void runCommands()
+    {
+        if (!_commandsScheduled.get())
+        {
+            return;
+        }
+        _commandsScheduled.set(false);
+        Runnable command;
+        int run = 0;
+        while (run++ < commandBatchSize && (command = _commands.poll()) != null)
+        {
+            try
+            {
+                command.run();
+            }
+            catch (RuntimeException e)
+            {
+                _logger.log(Level.SEVERE, "Exception when running command", e);
+            }
+        }
+        // leave the rest of a long queue for the next pass so other connectors get a turn
+        if (!_commands.isEmpty() && _commandsScheduled.compareAndSet(false, true))
+        {
+            scheduleCommands();
+        }
+    }
+
+    boolean hasInputCapacity()
+    {
+        return _transport == null || _transport.capacity() > 0;
+    }
+
+    /**
+     * @return true if any of the buffered input was consumed
+     */
+    boolean processReadBuffer()
+    {
+        int total = 0;
+        while (_readBuffer.size() > 0)
+        {
+            // input that wraps around the ring is offered as two runs, the parsers carry partial frames across
+            int length = _readBuffer.filledContiguous();
+            int consumed = processInput(_readBuffer.array(), _readBuffer.filledOffset(), length);
+            _readBuffer.consumed(consumed);
+            total += consumed;
+            if (consumed < length)
+            {
+                break;
+            }
+        }
+        return total > 0;
+    }
+
+    int getFlushThreshold()
+    {
+        return _flushThreshold;
+    }
+
+    long getFlushDeadline()
+    {
+        return _flushDeadline;
+    }
+
+    public void setFlushPolicy(int threshold, long deadline)
+    {
+        _flushThreshold = threshold;
+        _flushDeadline = deadline;
+        if (_transport != null)
+        {
+            _transport.setBatchable(deadline > 0);
+        }
+    }
+
+    int processInput(byte[] bytes, int offset, int size)
+    {
+        int read = 0;
+        while (read < size)
+        {
+            boolean saslDone = isSaslDone();
+            int consumed = 0;
+            switch (_state)
+            {
+            case UNINITIALIZED:
+                // the peer may pipeline AMQP frames behind its SASL frames, so they go to the
+                // transport as soon as the outcome is known rather than once it has been written
+                if (!saslDone)
+                {
+                    consumed = readSasl(bytes, offset + read, size - read);
+                    break;
+                }
+                else if (_sasl.getState() != SaslState.PN_SASL_PASS)
+                {
+                    break;
+                }
+            case OPENED:
+                consumed = readAMQPCommands(bytes, offset + read, size - read);
+                break;
+            case EOS:
+            case CLOSED:
+                break;
+            }
+            if (consumed == 0 && saslDone == isSaslDone())
+            {
+                break;
+            }
+            read += consumed;
+        }
+        return read;
+    }
+
+    void processOutput()
+    {
+        switch (_state)
+        {
+        case UNINITIALIZED:
+            writeSasl();
+            if (isSaslDone())
+            {
+                setState(_sasl.getState() == SaslState.PN_SASL_PASS ? ConnectorState.OPENED : ConnectorState.CLOSED);
+                if (_state == ConnectorState.OPENED)
+                {
+                    writeAMQPCommands();
+                }
+                saslDecided();
+            }
+            else if (isSaslPipelining())
+            {
+                writeAMQPCommands();
+            }
+            break;
+        case OPENED:
+            writeAMQPCommands();
+            break;
+        case EOS:
+            writeAMQPCommands();
+        case CLOSED:  // not a valid option
+            //TODO
+            break;
+        }
+    }
+
+    /**
+     * Called once the SASL outcome has been written, after which input held back for it can be read.
+     */
+    void saslDecided()
+    {
+    }
+
+    /**
+     * @return true if buffered input is held back until the SASL outcome is decided
+     */
+    boolean isInputHeld()
+    {
+        return _state == ConnectorState.UNINITIALIZED && !isSaslDone() && _readBuffer.size() > 0;
+    }
+
+    int readAMQPCommands(byte[] bytes, int offset, int size)
+    {
+        int consumed = _transport.input(bytes, offset, size);
+        if (consumed == END_OF_STREAM)
+        {
+            return size;
+        }
+        else
+        {
+            return consumed;
+        }
+    }
+
+    void writeAMQPCommands()
+    {
+        int size = _writeBuffer.freeContiguous();
+        while (size > 0)
+        {
+            int written = _transport.output(_writeBuffer.array(), _writeBuffer.freeOffset(), size);
+            _writeBuffer.produced(written);
+            // carry on at the front of the ring only if the run up to its end was filled
+            size = written == size ? _writeBuffer.freeContiguous() : 0;
+        }
+    }
+
+    int readSasl(byte[] bytes, int offset, int size)
+    {
+        int consumed = _sasl.input(bytes, offset, size);
+        if (consumed == END_OF_STREAM)
+        {
+            // the SASL layer has finished, what remains is for the transport
+            return 0;
+        }
+        else
+        {
+            return consumed;
+        }
+    }
+
+    void writeSasl()
+    {
+        int size = _writeBuffer.freeContiguous();
+        while (size > 0)
+        {
+            int written = _sasl.output(_writeBuffer.array(), _writeBuffer.freeOffset(), size);
+            _writeBuffer.produced(written);
+            // carry on at the front of the ring only if the run up to its end was filled
+            size = written == size ? _writeBuffer.freeContiguous() : 0;
+        }
+    }
+
+    public Listener<C> listener()
+    {
+        return _listener;
+    }
+
+    public Sasl sasl()
+    {
+        return _sasl;
+    }
+
+    public Connection getConnection()
+    {
+        return _connection;
+    }
+
+    public void setConnection(Connection connection)
+    {
+        _connection = connection;
+        _transport = TransportFactory.getDefaultTransportFactory().transport(_connection);
+        _transport.setBatchable(_flushDeadline > 0);
+    }
+
+    Transport getTransport()
+    {
+        return _transport;
+    }
+
+    public C getContext()
+    {
+        return _context;
+    }
+
+    public void setContext(C context)
+    {
+        _context = context;
+    }
+
+    public void close()
+    {
+        if (_state == ConnectorState.CLOSED)
+        {
+            return;
+        }
+
+        try
+        {
+            // If the connection was closed due to authentication error
+            // then there might be data available to write on to the wire.
+            writeSasl();
+            writeAMQPCommands(); // write any closing commands
+            closeChannel();
+            setState(ConnectorState.CLOSED);
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when closing connection",e);
+        }
+    }
+
+    public boolean isClosed()
+    {
+        return _state == ConnectorState.EOS || _state == ConnectorState.CLOSED;
+    }
+
+    public void destroy()
+    {
+        close(); // close if not closed already
+    }
+
+    private boolean isSaslPipelining()
+    {
+        return _transport != null && _sasl instanceof SaslImpl && ((SaslImpl) _sasl).isPipelining();
+    }
+
+    private boolean isSaslDone()
+    {
+        SaslState state = _sasl.getState();
+        return state == SaslState.PN_SASL_PASS || state == SaslState.PN_SASL_FAIL;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Driver;
+import org.apache.qpid.proton.driver.DriverLoop;
+import org.apache.qpid.proton.driver.Listener;
+
+/**
+ * A driver whose listeners and connectors do their I/O on threads of their own, and queue
+ * themselves for the application once they are ready. Subclasses for sockets implement
+ * {@link Driver}.
+ */
+abstract class AbstractDriverImpl implements DriverLoop
+{
+    @SuppressWarnings("rawtypes")
+    private final Queue<Listener> _readyListeners = new ConcurrentLinkedQueue<Listener>();
+    @SuppressWarnings("rawtypes")
+    private final Queue<Connector> _readyConnectors = new ConcurrentLinkedQueue<Connector>();
+    // connectors holding input that the application has no room for, queued again once it has
+    private final Set<AbstractConnectorImpl<?>> _inputBlocked =
+        Collections.newSetFromMap(new ConcurrentHashMap<AbstractConnectorImpl<?>, Boolean>());
+    private final AtomicInteger _connectorCount = new AtomicInteger();
+    private final Object _lock = new Object();
+    private boolean _woken;
+
+    /**
+     * @return a factory of daemon threads, so that a driver left running does not keep the JVM alive
+     */
+    static ThreadFactory daemonThreads()
+    {
+        return new ThreadFactory()
+        {
+            private final AtomicInteger _threads = new AtomicInteger();
+
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "proton-driver-" + _threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    public void wakeup()
+    {
+        synchronized(_lock)
+        {
+            _woken = true;
+            _lock.notifyAll();
+        }
+    }
+
+    public void doWait(int timeout)
+    {
+        resumeInput();
+        synchronized(_lock)
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            try
+            {
+                while(!_woken && _readyListeners.isEmpty() && _readyConnectors.isEmpty())
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if(timeout <= 0)
+                    {
+                        _lock.wait();
+                    }
+                    else if(remaining > 0)
+                    {
+                        _lock.wait(remaining);
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            _woken = false;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public Listener listener()
+    {
+        Listener listener = _readyListeners.poll();
+        if(listener != null)
+        {
+            ((Schedulable) listener).dequeued();
+        }
+        return listener;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public Connector connector()
+    {
+        Connector connector = _readyConnectors.poll();
+        if(connector != null)
+        {
+            ((Schedulable) connector).dequeued();
+        }
+        return connector;
+    }
+
+    public int getConnectorCount()
+    {
+        return _connectorCount.get();
+    }
+
+    public DriverLoop[] getLoops()
+    {
+        return new DriverLoop[] { this };
+    }
+
+    void ready(Listener<?> listener)
+    {
+        _readyListeners.add(listener);
+        signal();
+    }
+
+    void ready(Connector<?> connector)
+    {
+        _readyConnectors.add(connector);
+        signal();
+    }
+
+    private void signal()
+    {
+        synchronized(_lock)
+        {
+            _lock.notifyAll();
+        }
+    }
+
+    void blockInput(AbstractConnectorImpl<?> connector)
+    {
+        _inputBlocked.add(connector);
+    }
+
+    private void resumeInput()
+    {
+        Iterator<AbstractConnectorImpl<?>> iter = _inputBlocked.iterator();
+        while(iter.hasNext())
+        {
+            AbstractConnectorImpl<?> connector = iter.next();
+            if(connector.isClosed() || connector.hasInputCapacity())
+            {
+                iter.remove();
+                ((Schedulable) connector).post();
+            }
+        }
+    }
+
+    void connectorOpened()
+    {
+        _connectorCount.incrementAndGet();
+    }
+
+    void connectorClosed()
+    {
+        _connectorCount.decrementAndGet();
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.Sasl;
+
+/**
+ * A connector with at most one read and one write outstanding on its channel.
+ *
+ * Each buffer is handed back and forth rather than shared: the read buffer belongs to the
+ * outstanding read until it completes, then to {@link #process()} until the input has been
+ * consumed; the write buffer belongs to {@link #process()} until it has produced some output,
+ * then to the outstanding writes until all of it has been written.
+ */
+class AsyncConnectorImpl<C> extends AbstractConnectorImpl<C> implements Schedulable
+{
+    private final AsyncDriverImpl _driver;
+    private final AsynchronousSocketChannel _channel;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private final AtomicBoolean _queued = new AtomicBoolean();
+
+    private volatile boolean _connected;
+    private volatile boolean _inputPending;
+    private volatile boolean _endOfStream;
+    private volatile boolean _outputPending;
+
+    private final CompletionHandler<Void, Void> _connectHandler = new CompletionHandler<Void, Void>()
+    {
+        public void completed(Void result, Void attachment)
+        {
+            connected();
+            post();
+        }
+
+        public void failed(Throwable t, Void attachment)
+        {
+            _logger.log(Level.SEVERE, "Exception when connecting",t);
+            inputArrived(-1);
+        }
+    };
+
+    private final CompletionHandler<Long, Void> _readHandler = new CompletionHandler<Long, Void>()
+    {
+        public void completed(Long bytesRead, Void attachment)
+        {
+            inputArrived(bytesRead);
+        }
+
+        public void failed(Throwable t, Void attachment)
+        {
+            if (!(t instanceof AsynchronousCloseException))
+            {
+                _logger.log(Level.SEVERE, "Exception when reading from connection",t);
+                inputArrived(-1);
+            }
+        }
+    };
+
+    private final CompletionHandler<Long, Void> _writeHandler = new CompletionHandler<Long, Void>()
+    {
+        public void completed(Long written, Void attachment)
+        {
+            getWriteBuffer().consumed(written.intValue());
+            if (getWriteBuffer().size() > 0)
+            {
+                writeChannel();
+            }
+            else
+            {
+                _outputPending = false;
+                // the transport may have more output than fitted in the buffer
+                post();
+            }
+        }
+
+        public void failed(Throwable t, Void attachment)
+        {
+            if (!(t instanceof AsynchronousCloseException))
+            {
+                _logger.log(Level.SEVERE, "Exception when writing to connection",t);
+            }
+        }
+    };
+
+    AsyncConnectorImpl(AsyncDriverImpl driver, Listener<C> listener, Sasl sasl, AsynchronousSocketChannel c, C context)
+    {
+        super(listener, sasl, context);
+        _driver = driver;
+        _channel = c;
+    }
+
+    void connect(SocketAddress address)
+    {
+        _channel.connect(address, null, _connectHandler);
+    }
+
+    void connected()
+    {
+        _connected = true;
+        readChannel();
+    }
+
+    private void readChannel()
+    {
+        ByteBuffer[] views = getReadBuffer().freeViews();
+        _channel.read(views, 0, views.length, 0L, TimeUnit.MILLISECONDS, null, _readHandler);
+    }
+
+    private void inputArrived(long bytesRead)
+    {
+        if (bytesRead > 0)
+        {
+            getReadBuffer().produced((int) bytesRead);
+        }
+        _endOfStream = bytesRead < 0;
+        _inputPending = true;
+        post();
+    }
+
+    private void writeChannel()
+    {
+        ByteBuffer[] views = getWriteBuffer().filledViews();
+        _channel.write(views, 0, views.length, 0L, TimeUnit.MILLISECONDS, null, _writeHandler);
+    }
+
+    public void process()
+    {
+        if (!_channel.isOpen())
+        {
+            setState(ConnectorState.CLOSED);
+            return;
+        }
+
+        boolean inputPending = _inputPending;
+        boolean endOfStream = _endOfStream;
+        if (inputPending)
+        {
+            processReadBuffer();
+        }
+        runCommands();
+        write();
+        if (inputPending)
+        {
+            if (getReadBuffer().size() > 0)
+            {
+                // input held back until the SASL outcome was decided
+                processReadBuffer();
+            }
+            if (endOfStream)
+            {
+                setState(ConnectorState.EOS);
+            }
+            else if (getReadBuffer().size() == 0 && hasInputCapacity())
+            {
+                // read again; until then the peer is pushed back on, and input held back for the
+                // SASL outcome is offered again by the next process
+                _inputPending = false;
+                readChannel();
+            }
+            else if (!hasInputCapacity())
+            {
+                // the driver hands the connector back once the application has caught up
+                _driver.blockInput(this);
+            }
+        }
+    }
+
+    private void write()
+    {
+        if (!_connected || _outputPending)
+        {
+            // the connector is posted again once connected or once the outstanding output is written
+            return;
+        }
+        processOutput();
+        if (getWriteBuffer().size() > 0)
+        {
+            _outputPending = true;
+            writeChannel();
+        }
+    }
+
+    public void dequeued()
+    {
+        _queued.set(false);
+    }
+
+    public void post()
+    {
+        if (_queued.compareAndSet(false, true))
+        {
+            _driver.ready(this);
+        }
+    }
+
+    void scheduleCommands()
+    {
+        post();
+    }
+
+    void connectorClosed()
+    {
+        _driver.connectorClosed();
+    }
+
+    void closeChannel() throws IOException
+    {
+        _channel.close();
+    }
+
+    public void close()
+    {
+        if (getState() == ConnectorState.CLOSED)
+        {
+            return;
+        }
+
+        try
+        {
+            // closing frames cannot be written behind an outstanding write, and would be cut off
+            // by the close anyway
+            closeChannel();
+            setState(ConnectorState.CLOSED);
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when closing connection",e);
+        }
+    }
+}
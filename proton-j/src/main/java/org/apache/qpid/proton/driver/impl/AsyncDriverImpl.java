@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Driver;
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.impl.SaslClientImpl;
+import org.apache.qpid.proton.engine.impl.SaslServerImpl;
+
+/**
+ * A driver built on asynchronous channels: accepts, reads and writes are completed by the threads
+ * of a channel group, and a connector is handed to the application once input has arrived or its
+ * output has been written. {@link Connector#process()} only starts I/O, it never waits for it.
+ *
+ * Needs a Java 7 runtime. Channels cannot be adopted from a selector based driver, so the
+ * methods taking an existing channel are not supported, and neither are Unix domain sockets.
+ */
+public class AsyncDriverImpl extends AbstractDriverImpl implements Driver
+{
+    private static int driverThreads = Integer.getInteger
+        ("pn.driver_threads", Runtime.getRuntime().availableProcessors());
+
+    private final AsynchronousChannelGroup _group;
+    private final boolean _ownsGroup;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+
+    /**
+     * Creates a driver with a group of its own, of pn.driver_threads threads.
+     */
+    public AsyncDriverImpl() throws IOException
+    {
+        this(AsynchronousChannelGroup.withFixedThreadPool(driverThreads, daemonThreads()), true);
+    }
+
+    /**
+     * @param group the group whose threads complete the I/O; left running by {@link #destroy()}
+     */
+    public AsyncDriverImpl(AsynchronousChannelGroup group)
+    {
+        this(group, false);
+    }
+
+    private AsyncDriverImpl(AsynchronousChannelGroup group, boolean ownsGroup)
+    {
+        _group = group;
+        _ownsGroup = ownsGroup;
+    }
+
+    public void destroy()
+    {
+        wakeup();
+        if(_ownsGroup)
+        {
+            try
+            {
+                _group.shutdownNow();
+            }
+            catch (IOException e)
+            {
+                _logger.log(Level.SEVERE, "Exception when shutting down channel group",e);
+            }
+        }
+    }
+
+    public <C> Listener<C> createListener(String host, int port, C context)
+    {
+        if(UnixSockets.isPath(host))
+        {
+            throw new UnsupportedOperationException("Cannot listen on a Unix domain socket");
+        }
+        AsynchronousServerSocketChannel channel = null;
+        try
+        {
+            channel = AsynchronousServerSocketChannel.open(_group);
+            channel.bind(new InetSocketAddress(host, port));
+            AsyncListenerImpl<C> listener = new AsyncListenerImpl<C>(this, channel, context);
+            listener.start();
+            return listener;
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when creating listener",e);
+            if(channel != null)
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException ce)
+                {
+                    _logger.log(Level.SEVERE, "Exception when closing listener",ce);
+                }
+            }
+        }
+        return null;
+    }
+
+    public <C> Listener<C> createListener(ServerSocketChannel c, C context)
+    {
+        throw new UnsupportedOperationException("Cannot listen on a selectable channel");
+    }
+
+    public <C> Connector<C> createConnector(String host, int port, C context)
+    {
+        if(UnixSockets.isPath(host))
+        {
+            throw new UnsupportedOperationException("Cannot connect to a Unix domain socket");
+        }
+        try
+        {
+            AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(_group);
+            AsyncConnectorImpl<C> connector = new AsyncConnectorImpl<C>(this, null, new SaslClientImpl(), channel, context);
+            opened(connector);
+            connector.connect(new InetSocketAddress(host, port));
+            return connector;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public <C> Connector<C> createConnector(SelectableChannel c, C context)
+    {
+        throw new UnsupportedOperationException("Cannot connect over a selectable channel");
+    }
+
+    <C> Connector<C> createServerConnector(AsynchronousSocketChannel c, C context, Listener<C> l)
+    {
+        AsyncConnectorImpl<C> connector = new AsyncConnectorImpl<C>(this, l, new SaslServerImpl(), c, context);
+        opened(connector);
+        connector.connected();
+        return connector;
+    }
+
+    private void opened(AsyncConnectorImpl<?> connector)
+    {
+        connectorOpened();
+        // returned once before any input so that it can be set up by the application
+        connector.post();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Listener;
+
+class AsyncListenerImpl<C> implements Listener<C>, Schedulable, CompletionHandler<AsynchronousSocketChannel, Void>
+{
+    private final C _context;
+    private final AsynchronousServerSocketChannel _channel;
+    private final AsyncDriverImpl _driver;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private final Queue<AsynchronousSocketChannel> _accepted = new ConcurrentLinkedQueue<AsynchronousSocketChannel>();
+    private final AtomicBoolean _queued = new AtomicBoolean();
+
+    AsyncListenerImpl(AsyncDriverImpl driver, AsynchronousServerSocketChannel c, C context)
+    {
+        _driver = driver;
+        _channel = c;
+        _context = context;
+    }
+
+    void start()
+    {
+        _channel.accept(null, this);
+    }
+
+    public void completed(AsynchronousSocketChannel c, Void attachment)
+    {
+        _accepted.add(c);
+        post();
+        _channel.accept(null, this);
+    }
+
+    public void failed(Throwable t, Void attachment)
+    {
+        if(t instanceof AsynchronousCloseException)
+        {
+            // the listener was closed
+            return;
+        }
+        _logger.log(Level.SEVERE, "Exception when accepting connection",t);
+        if(_channel.isOpen())
+        {
+            _channel.accept(null, this);
+        }
+    }
+
+    public void post()
+    {
+        if(_queued.compareAndSet(false, true))
+        {
+            _driver.ready(this);
+        }
+    }
+
+    public void dequeued()
+    {
+        _queued.set(false);
+    }
+
+    public Connector<C> accept()
+    {
+        AsynchronousSocketChannel c = _accepted.poll();
+        if(c == null)
+        {
+            return null;
+        }
+        if(!_accepted.isEmpty())
+        {
+            post();
+        }
+        return _driver.createServerConnector(c, _context, this);
+    }
+
+    public C getContext()
+    {
+        return _context;
+    }
+
+    public void close()
+    {
+        try
+        {
+            _channel.close();
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when closing listener",e);
+        }
+    }
+
+    public void destroy()
+    {
+        close();
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.Sasl;
+
+/**
+ * A connector with a thread that blocks reading the socket and another that blocks writing it.
+ *
+ * Each buffer is handed back and forth rather than shared: the read buffer belongs to the reading
+ * thread until it has read some input, then to {@link #process()} until that input has been
+ * consumed; the write buffer belongs to {@link #process()} until it has produced some output,
+ * then to the writing thread until that output has been written.
+ */
+class BlockingConnectorImpl<C> extends AbstractConnectorImpl<C> implements Schedulable
+{
+    private final BlockingDriverImpl _driver;
+    private final SocketChannel _channel;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private final AtomicBoolean _queued = new AtomicBoolean();
+
+    // guarded by this
+    private boolean _inputPending;
+    private boolean _endOfStream;
+    private boolean _outputPending;
+
+    BlockingConnectorImpl(BlockingDriverImpl driver, Listener<C> listener, Sasl sasl, SocketChannel c, C context)
+    {
+        super(listener, sasl, context);
+        _driver = driver;
+        _channel = c;
+    }
+
+    SocketChannel getChannel()
+    {
+        return _channel;
+    }
+
+    void start(ThreadFactory threadFactory)
+    {
+        threadFactory.newThread(new Runnable()
+        {
+            public void run()
+            {
+                readLoop();
+            }
+        }).start();
+        threadFactory.newThread(new Runnable()
+        {
+            public void run()
+            {
+                writeLoop();
+            }
+        }).start();
+    }
+
+    private void readLoop()
+    {
+        RingBuffer readBuffer = getReadBuffer();
+        while(awaitBuffer(false))
+        {
+            long bytesRead;
+            try
+            {
+                bytesRead = _channel.read(readBuffer.freeViews());
+            }
+            catch (ClosedChannelException e)
+            {
+                // closed by the application
+                return;
+            }
+            catch (IOException e)
+            {
+                _logger.log(Level.SEVERE, "Exception when reading from connection",e);
+                bytesRead = -1;
+            }
+
+            synchronized(this)
+            {
+                if(bytesRead > 0)
+                {
+                    readBuffer.produced((int) bytesRead);
+                }
+                _endOfStream = bytesRead < 0;
+                _inputPending = true;
+            }
+            post();
+            if(bytesRead < 0)
+            {
+                return;
+            }
+        }
+    }
+
+    private void writeLoop()
+    {
+        RingBuffer writeBuffer = getWriteBuffer();
+        while(awaitBuffer(true))
+        {
+            try
+            {
+                while(writeBuffer.size() > 0)
+                {
+                    long written = _channel.write(writeBuffer.filledViews());
+                    writeBuffer.consumed((int) written);
+                }
+            }
+            catch (ClosedChannelException e)
+            {
+                // closed by the application
+                return;
+            }
+            catch (IOException e)
+            {
+                _logger.log(Level.SEVERE, "Exception when writing to connection",e);
+                return;
+            }
+
+            synchronized(this)
+            {
+                _outputPending = false;
+            }
+            // the transport may have more output than fitted in the buffer
+            post();
+        }
+    }
+
+    /**
+     * Waits until the reading or writing thread owns its buffer.
+     *
+     * @return false if the connector was closed meanwhile
+     */
+    private synchronized boolean awaitBuffer(boolean output)
+    {
+        try
+        {
+            while((output ? !_outputPending : _inputPending) && _channel.isOpen())
+            {
+                wait();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            return false;
+        }
+        return _channel.isOpen();
+    }
+
+    public void process()
+    {
+        if (!_channel.isOpen())
+        {
+            setState(ConnectorState.CLOSED);
+            return;
+        }
+
+        boolean inputPending;
+        boolean endOfStream;
+        synchronized(this)
+        {
+            inputPending = _inputPending;
+            endOfStream = _endOfStream;
+        }
+        if (inputPending)
+        {
+            processReadBuffer();
+        }
+        runCommands();
+        write();
+        if (inputPending)
+        {
+            if (getReadBuffer().size() > 0)
+            {
+                // input held back until the SASL outcome was decided
+                processReadBuffer();
+            }
+            if (endOfStream)
+            {
+                setState(ConnectorState.EOS);
+            }
+            else if (getReadBuffer().size() == 0 && hasInputCapacity())
+            {
+                // hand the buffer back to the reading thread; until then the peer is pushed back on,
+                // and input held back for the SASL outcome is offered again by the next process
+                synchronized(this)
+                {
+                    _inputPending = false;
+                    notifyAll();
+                }
+            }
+            else if (!hasInputCapacity())
+            {
+                // the driver hands the connector back once the application has caught up
+                _driver.blockInput(this);
+            }
+        }
+    }
+
+    private void write()
+    {
+        synchronized(this)
+        {
+            if (_outputPending)
+            {
+                // the writing thread posts the connector again once it is done
+                return;
+            }
+        }
+        processOutput();
+        if (getWriteBuffer().size() > 0)
+        {
+            synchronized(this)
+            {
+                _outputPending = true;
+                notifyAll();
+            }
+        }
+    }
+
+    public void dequeued()
+    {
+        _queued.set(false);
+    }
+
+    public void post()
+    {
+        if (_queued.compareAndSet(false, true))
+        {
+            _driver.ready(this);
+        }
+    }
+
+    void scheduleCommands()
+    {
+        post();
+    }
+
+    void connectorClosed()
+    {
+        _driver.connectorClosed();
+    }
+
+    void closeChannel() throws IOException
+    {
+        _channel.close();
+    }
+
+    public void close()
+    {
+        if (getState() == ConnectorState.CLOSED)
+        {
+            return;
+        }
+
+        try
+        {
+            // closing frames cannot be written behind the writing thread's back, and would be
+            // cut off by the close anyway
+            closeChannel();
+            setState(ConnectorState.CLOSED);
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when closing connection",e);
+        }
+        synchronized(this)
+        {
+            notifyAll();
+        }
+    }
+}
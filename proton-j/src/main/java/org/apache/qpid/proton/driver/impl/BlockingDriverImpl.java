@@ -0,0 +1,162 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Driver;
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.impl.SaslClientImpl;
+import org.apache.qpid.proton.engine.impl.SaslServerImpl;
+
+/**
+ * A driver without a selector: every listener has a thread which blocks in accept, and every
+ * connector one which blocks in read and one which blocks in write. A connector is handed to the
+ * application once input has arrived or its output has been written, and
+ * {@link Connector#process()} never blocks on the socket.
+ *
+ * Output is not held back as set by {@link Connector#setFlushPolicy(int, long)}; what one
+ * process produces is written as soon as the previous output has been.
+ */
+public class BlockingDriverImpl extends AbstractDriverImpl implements Driver
+{
+    private final ThreadFactory _threadFactory;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+
+    public BlockingDriverImpl()
+    {
+        this(daemonThreads());
+    }
+
+    /**
+     * @param threadFactory creates the thread for each listener and connector; on a JDK with
+     *                      virtual threads, Thread.ofVirtual().factory() lets idle connections
+     *                      be parked without holding a platform thread each
+     */
+    public BlockingDriverImpl(ThreadFactory threadFactory)
+    {
+        _threadFactory = threadFactory;
+    }
+
+    public void destroy()
+    {
+        wakeup();
+    }
+
+    public <C> Listener<C> createListener(String host, int port, C context)
+    {
+        ServerSocketChannel serverSocketChannel = null;
+        try
+        {
+            if(UnixSockets.isPath(host))
+            {
+                serverSocketChannel = UnixSockets.openServerChannel();
+                UnixSockets.bind(serverSocketChannel, host);
+            }
+            else
+            {
+                serverSocketChannel = ServerSocketChannel.open();
+                serverSocketChannel.socket().bind(new InetSocketAddress(host, port));
+            }
+            return createListener(serverSocketChannel, context);
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when creating listener",e);
+            if(serverSocketChannel != null)
+            {
+                try
+                {
+                    serverSocketChannel.close();
+                }
+                catch (IOException ce)
+                {
+                    _logger.log(Level.SEVERE, "Exception when closing listener",ce);
+                }
+            }
+        }
+        return null;
+    }
+
+    public <C> Listener<C> createListener(ServerSocketChannel c, C context)
+    {
+        try
+        {
+            c.configureBlocking(true);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        BlockingListenerImpl<C> listener = new BlockingListenerImpl<C>(this, c, context);
+        _threadFactory.newThread(listener).start();
+        return listener;
+    }
+
+    public <C> Connector<C> createConnector(String host, int port, C context)
+    {
+        try
+        {
+            SocketChannel channel = UnixSockets.isPath(host) ? UnixSockets.openChannel() : SocketChannel.open();
+            channel.connect(UnixSockets.isPath(host) ? UnixSockets.address(host) : new InetSocketAddress(host, port));
+            return createConnector(channel, context);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public <C> Connector<C> createConnector(SelectableChannel c, C context)
+    {
+        return start(new BlockingConnectorImpl<C>(this, null, new SaslClientImpl(), (SocketChannel) c, context));
+    }
+
+    <C> Connector<C> createServerConnector(SocketChannel c, C context, Listener<C> l)
+    {
+        return start(new BlockingConnectorImpl<C>(this, l, new SaslServerImpl(), c, context));
+    }
+
+    private <C> Connector<C> start(BlockingConnectorImpl<C> connector)
+    {
+        try
+        {
+            connector.getChannel().configureBlocking(true);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        connectorOpened();
+        // returned once before any input so that it can be set up by the application
+        connector.post();
+        connector.start(_threadFactory);
+        return connector;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Listener;
+
+class BlockingListenerImpl<C> implements Listener<C>, Runnable, Schedulable
+{
+    private final C _context;
+    private final ServerSocketChannel _channel;
+    private final BlockingDriverImpl _driver;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private final Queue<SocketChannel> _accepted = new ConcurrentLinkedQueue<SocketChannel>();
+    private final AtomicBoolean _queued = new AtomicBoolean();
+
+    BlockingListenerImpl(BlockingDriverImpl driver, ServerSocketChannel c, C context)
+    {
+        _driver = driver;
+        _channel = c;
+        _context = context;
+    }
+
+    public void run()
+    {
+        try
+        {
+            while(true)
+            {
+                _accepted.add(_channel.accept());
+                post();
+            }
+        }
+        catch (ClosedChannelException e)
+        {
+            // the listener was closed
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when accepting connection",e);
+        }
+    }
+
+    public void post()
+    {
+        if(_queued.compareAndSet(false, true))
+        {
+            _driver.ready(this);
+        }
+    }
+
+    public void dequeued()
+    {
+        _queued.set(false);
+    }
+
+    public Connector<C> accept()
+    {
+        SocketChannel c = _accepted.poll();
+        if(c == null)
+        {
+            return null;
+        }
+        if(!_accepted.isEmpty())
+        {
+            post();
+        }
+        return _driver.createServerConnector(c, _context, this);
+    }
+
+    public C getContext()
+    {
+        return _context;
+    }
+
+    public void close()
+    {
+        try
+        {
+            _channel.close();
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when closing listener",e);
+        }
+    }
+
+    public void destroy()
+    {
+        close();
+    }
+}
@@ -16,59 +16,47 @@
  */
 package org.apache.qpid.proton.driver.impl;
 
-import static org.apache.qpid.proton.driver.impl.ConnectorImpl.ConnectorState.UNINITIALIZED;
-
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.qpid.proton.driver.Connector;
 import org.apache.qpid.proton.driver.Listener;
-import org.apache.qpid.proton.engine.Connection;
 import org.apache.qpid.proton.engine.Sasl;
-import org.apache.qpid.proton.engine.Sasl.SaslState;
-import org.apache.qpid.proton.engine.Transport;
-import org.apache.qpid.proton.engine.impl.TransportFactory;
 
-class ConnectorImpl<C> implements Connector<C>
+class ConnectorImpl<C> extends AbstractConnectorImpl<C>
 {
-    public static int END_OF_STREAM = -1;
-    private static int DEFAULT_BUFFER_SIZE = 64 * 1024;
-    private static int readBufferSize = Integer.getInteger
-        ("pn.receive_buffer_size", DEFAULT_BUFFER_SIZE);
-    private static int writeBufferSize = Integer.getInteger
-        ("pn.send_buffer_size", DEFAULT_BUFFER_SIZE);
-
-    enum ConnectorState {UNINITIALIZED, OPENED, EOS, CLOSED};
+    private static int readQuota = Integer.getInteger
+        ("pn.read_quota", 4 * DEFAULT_BUFFER_SIZE);
 
-    private final Sasl _sasl;
-    private final DriverImpl _driver;
-    private final Listener<C> _listener;
+    private final DriverLoopImpl _loop;
     private final SocketChannel _channel;
     private final Logger _logger = Logger.getLogger("proton.driver");
-    private C _context;
 
-    private Connection _connection;
     private SelectionKey _key;
-    private ConnectorState _state = UNINITIALIZED;
 
-    private ByteBuffer _readBuffer = ByteBuffer.allocate(readBufferSize);
-    private int _bytesNotRead = 0;
+    private boolean _readDeferred;
+    private boolean _inputBlocked;
+    private boolean _inputHeld;
 
-    private int _bytesNotWritten = 0;
-    private ByteBuffer _writeBuffer = ByteBuffer.allocate(writeBufferSize);
-    private Transport _transport = null;
+    private long _flushAt;
+    private boolean _flushPending;
 
-    ConnectorImpl(DriverImpl driver, Listener<C> listener, Sasl sasl, SocketChannel c, C context, SelectionKey key)
+    ConnectorImpl(DriverLoopImpl loop, Listener<C> listener, Sasl sasl, SocketChannel c, C context)
     {
-        _driver = driver;
-        _listener = listener;
+        super(listener, sasl, context);
+        _loop = loop;
         _channel = c;
-        _sasl = sasl;
-        _context = context;
+    }
+
+    SocketChannel getChannel()
+    {
+        return _channel;
+    }
+
+    void setKey(SelectionKey key)
+    {
         _key = key;
     }
 
@@ -88,41 +76,66 @@ class ConnectorImpl<C> implements Connector<C>
 
         if (!_channel.isOpen())
         {
-            _state = ConnectorState.CLOSED;
+            setState(ConnectorState.CLOSED);
             return;
         }
 
-        if (_key.isReadable())
+        _readDeferred = false;
+        if (getReadBuffer().size() > 0)
         {
+            // input held back until the SASL outcome was decided
+            processReadBuffer();
+        }
+        if (_inputBlocked && hasInputCapacity())
+        {
+            // the application has caught up, so let the peer send again
+            _inputBlocked = false;
+            if (!_inputHeld)
+            {
+                _key.interestOps(_key.interestOps() | SelectionKey.OP_READ);
+            }
             read();
         }
+        else if (_key.isReadable())
+        {
+            read();
+        }
+        runCommands();
         write();
     }
 
+    void scheduleCommands()
+    {
+        _loop.scheduleCommands(this);
+    }
+
     void read()
     {
         try
         {
-            int  bytesRead = _channel.read(_readBuffer);
-            int consumed = 0;
+            int totalRead = 0;
+            long bytesRead = readChannel();
             while (bytesRead > 0)
             {
-                consumed = processInput(_readBuffer.array(), 0, bytesRead + _bytesNotRead);
-                if (consumed < bytesRead)
+                totalRead += bytesRead;
+                // stop once the transport takes nothing, the unconsumed input is offered again later
+                if (!processReadBuffer())
                 {
-                    _readBuffer.compact();
-                    _bytesNotRead = bytesRead - consumed;
+                    holdInput();
+                    break;
                 }
-                else
+                if (readQuota > 0 && totalRead >= readQuota)
                 {
-                    _readBuffer.rewind();
-                    _bytesNotRead = 0;
+                    // leave the rest for a later pass so that a fast peer cannot starve the others
+                    _readDeferred = true;
+                    _loop.deferRead(this);
+                    break;
                 }
-                bytesRead = _channel.read(_readBuffer);
+                bytesRead = readChannel();
             }
             if (bytesRead == -1)
             {
-                _state = ConnectorState.EOS;
+                setState(ConnectorState.EOS);
             }
         }
         catch (IOException e)
@@ -131,200 +144,160 @@ class ConnectorImpl<C> implements Connector<C>
         }
     }
 
-    void write()
+    /**
+     * Stops selecting for input while what has been read waits for the SASL outcome, as the
+     * channel would otherwise stay readable and the loop would spin once the buffer is full.
+     */
+    private void holdInput()
     {
-        try
+        if (!_inputHeld && isInputHeld())
         {
-            processOutput();
-            if (_bytesNotWritten > 0)
-            {
-                _writeBuffer.limit(_bytesNotWritten);
-                int written = _channel.write(_writeBuffer);
-                if (_writeBuffer.hasRemaining())
-                {
-                    _writeBuffer.compact();
-                    _bytesNotWritten = _bytesNotWritten - written;
-                }
-                else
-                {
-                    _writeBuffer.clear();
-                    _bytesNotWritten = 0;
-                }
-                if (_bytesNotWritten > 0) // couldn't write all the data, need to know when we could write again.
-                {
-                    _key.interestOps(_key.interestOps() | SelectionKey.OP_WRITE);
-                }
-                else if ((_key.interestOps() & SelectionKey.OP_WRITE) != 0)
-                {
-                    _key.interestOps(_key.interestOps() & ~SelectionKey.OP_WRITE);                    
-                }
-            }
-        }
-        catch (IOException e)
-        {
-            _logger.log(Level.SEVERE, "Exception when writing to connection",e);
+            _inputHeld = true;
+            _key.interestOps(_key.interestOps() & ~SelectionKey.OP_READ);
         }
     }
 
-    int processInput(byte[] bytes, int offset, int size)
+    void saslDecided()
     {
-        int read = 0;
-        while (read < size)
+        if (_inputHeld)
         {
-            offset = read;
-            switch (_state)
+            _inputHeld = false;
+            if (!_inputBlocked && _key.isValid())
             {
-            case UNINITIALIZED:
-                read += readSasl(bytes, offset, size - offset);
-                if (isSaslDone())
-                {
-                    _state = _sasl.getState() == SaslState.PN_SASL_PASS ? ConnectorState.OPENED : ConnectorState.CLOSED;
-                }
-                break;
-            case OPENED:
-                read += readAMQPCommands(bytes, offset, size - offset);
-                break;
-            case EOS:
-            case CLOSED:
-                break;
+                _key.interestOps(_key.interestOps() | SelectionKey.OP_READ);
+            }
+            if (getReadBuffer().size() > 0 && !_readDeferred)
+            {
+                // nothing may arrive to select the connector again, so have the loop hand it back
+                _readDeferred = true;
+                _loop.deferRead(this);
             }
         }
-        return read;
     }
 
-    void processOutput()
+    /**
+     * @return the bytes read, or zero without reading if the transport has no room for more input
+     */
+    private long readChannel() throws IOException
     {
-        switch (_state)
+        if (!hasInputCapacity())
         {
-        case UNINITIALIZED:
-            writeSasl();
-            if (isSaslDone())
+            // stop selecting for input until the application has read what is buffered, so that
+            // TCP flow control pushes back on the peer
+            if (!_inputBlocked)
             {
-                _state = _sasl.getState() == SaslState.PN_SASL_PASS ? ConnectorState.OPENED : ConnectorState.CLOSED;
+                _inputBlocked = true;
+                _key.interestOps(_key.interestOps() & ~SelectionKey.OP_READ);
+                _loop.blockInput(this);
             }
-            break;
-        case OPENED:
-            writeAMQPCommands();
-            break;
-        case EOS:
-            writeAMQPCommands();
-        case CLOSED:  // not a valid option
-            //TODO
-            break;
+            return 0;
         }
-    }
-
-    int readAMQPCommands(byte[] bytes, int offset, int size)
-    {
-        int consumed = _transport.input(bytes, offset, size);
-        if (consumed == END_OF_STREAM)
+        RingBuffer readBuffer = getReadBuffer();
+        if (readBuffer.free() == 0)
         {
-            return size;
+            return 0;
         }
-        else
+        long bytesRead = _channel.read(readBuffer.freeViews());
+        if (bytesRead > 0)
         {
-            return consumed;
+            readBuffer.produced((int) bytesRead);
         }
+        return bytesRead;
+    }
+
+    boolean isReadDeferred()
+    {
+        return _readDeferred;
     }
 
-    void writeAMQPCommands()
+    boolean isInputBlocked()
     {
-        int size = _writeBuffer.array().length - _bytesNotWritten;
-        _bytesNotWritten += _transport.output(_writeBuffer.array(),
-                _bytesNotWritten, size);
+        return _inputBlocked;
     }
 
-    int readSasl(byte[] bytes, int offset, int size)
+    void write()
     {
-        int consumed = _sasl.input(bytes, offset, size);
-        if (consumed == END_OF_STREAM)
+        try
         {
-            return size;
+            RingBuffer writeBuffer = getWriteBuffer();
+            boolean more;
+            do
+            {
+                processOutput();
+                // the transport may have more output than fitted in the buffer
+                more = writeBuffer.free() == 0;
+                if (writeBuffer.size() > 0 && !deferFlush())
+                {
+                    long written = _channel.write(writeBuffer.filledViews());
+                    writeBuffer.consumed((int) written);
+                    if (writeBuffer.size() > 0) // couldn't write all the data, need to know when we could write again.
+                    {
+                        _key.interestOps(_key.interestOps() | SelectionKey.OP_WRITE);
+                        more = false;
+                    }
+                    else if ((_key.interestOps() & SelectionKey.OP_WRITE) != 0)
+                    {
+                        _key.interestOps(_key.interestOps() & ~SelectionKey.OP_WRITE);                    
+                    }
+                }
+                else
+                {
+                    more = false;
+                }
+            }
+            while (more);
         }
-        else
+        catch (IOException e)
         {
-            return consumed;
+            _logger.log(Level.SEVERE, "Exception when writing to connection",e);
         }
     }
 
-    void writeSasl()
+    /**
+     * @return true if the pending output is held back to coalesce it with what follows
+     */
+    private boolean deferFlush()
     {
-        int size = _writeBuffer.array().length - _bytesNotWritten;
-        _bytesNotWritten += _sasl.output(_writeBuffer.array(),
-                _bytesNotWritten, size);
-    }
-
-    public Listener<C> listener()
-    {
-        return _listener;
-    }
-
-    public Sasl sasl()
-    {
-        return _sasl;
-    }
-
-    public Connection getConnection()
-    {
-        return _connection;
-    }
-
-    public void setConnection(Connection connection)
-    {
-        _connection = connection;
-        _transport = TransportFactory.getDefaultTransportFactory().transport(_connection);
-    }
-
-    public C getContext()
-    {
-        return _context;
-    }
-
-    public void setContext(C context)
-    {
-        _context = context;
-    }
-
-    public void close()
-    {
-        if (_state == ConnectorState.CLOSED)
+        if (getFlushDeadline() <= 0
+            || getWriteBuffer().size() >= getFlushThreshold()
+            || getState() != ConnectorState.OPENED
+            || (_key.interestOps() & SelectionKey.OP_WRITE) != 0)
         {
-            return;
+            _flushPending = false;
+            return false;
         }
-
-        try
+        long now = System.nanoTime();
+        if (!_flushPending)
         {
-            // If the connection was closed due to authentication error
-            // then there might be data available to write on to the wire.
-            writeSasl();
-            writeAMQPCommands(); // write any closing commands
-            _channel.close();
-            _state = ConnectorState.CLOSED;
+            _flushPending = true;
+            _flushAt = now + getFlushDeadline() * 1000L;
+            _loop.deferFlush(this);
         }
-        catch (IOException e)
+        else if (now - _flushAt >= 0)
         {
-            _logger.log(Level.SEVERE, "Exception when closing connection",e);
+            _flushPending = false;
+            return false;
         }
+        return true;
     }
 
-    public boolean isClosed()
+    boolean isFlushPending()
     {
-        return _state == ConnectorState.EOS || _state == ConnectorState.CLOSED;
+        return _flushPending;
     }
 
-    public void destroy()
+    long getFlushAt()
     {
-        close(); // close if not closed already
+        return _flushAt;
     }
 
-    private void setState(ConnectorState newState)
+    void connectorClosed()
     {
-        _state = newState;
+        _loop.connectorClosed();
     }
 
-    private boolean isSaslDone()
+    void closeChannel() throws IOException
     {
-        SaslState state = _sasl.getState();
-        return state == SaslState.PN_SASL_PASS || state == SaslState.PN_SASL_FAIL;
+        _channel.close();
     }
 }
@@ -26,152 +26,83 @@ import java.net.ServerSocket;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import org.apache.qpid.proton.driver.Connector;
 import org.apache.qpid.proton.driver.Driver;
+import org.apache.qpid.proton.driver.DriverLoop;
 import org.apache.qpid.proton.driver.Listener;
 import org.apache.qpid.proton.engine.impl.SaslClientImpl;
 import org.apache.qpid.proton.engine.impl.SaslServerImpl;
 
-public class DriverImpl implements Driver
+public class DriverImpl extends DriverLoopImpl implements Driver
 {
-    private Selector _selector;
-    private Set<SelectionKey> _selectedKeys = Collections.emptySet();
-    private Logger _logger = Logger.getLogger("proton.driver");
+    private static int driverLoops = Integer.getInteger("pn.driver_loops", 1);
 
-    public DriverImpl() throws IOException
-    {
-        _selector = Selector.open();
-    }
+    private final DriverLoopImpl[] _loops;
+    private int _nextLoop;
 
-    public void wakeup()
+    public DriverImpl() throws IOException
     {
-        _selector.wakeup();
+        this(driverLoops);
     }
 
-    public void doWait(int timeout)
+    /**
+     * @param loops the number of I/O loops to spread connectors across; with more than one the
+     *              driver's own selector is left to its listeners
+     */
+    public DriverImpl(int loops) throws IOException
     {
-        try
+        if(loops <= 1)
         {
-            _selector.select(timeout);
-            _selectedKeys = _selector.selectedKeys();
+            _loops = new DriverLoopImpl[] { this };
         }
-        catch (IOException e)
+        else
         {
-            _logger.log(Level.SEVERE, "Exception when waiting for IO Event",e);
-            throw new RuntimeException(e);
-        }
-    }
-
-    @SuppressWarnings("rawtypes")
-    public Listener listener()
-    {
-        Listener listener = null;
-        listener = getFirstListener();
-        if(listener == null)
-        {
-            try
-            {
-                selectNow();
-            }
-            catch (IOException e)
+            _loops = new DriverLoopImpl[loops];
+            for(int i = 0; i < loops; i++)
             {
-                _logger.log(Level.SEVERE, "Exception when selecting",e);
-                throw new RuntimeException(e);
+                _loops[i] = new DriverLoopImpl();
             }
-            listener = getFirstListener();
         }
-        return listener;
     }
 
-    private void selectNow() throws IOException
+    public DriverLoop[] getLoops()
     {
-        _selector.selectNow();
-        _selectedKeys = _selector.selectedKeys();
+        return _loops.clone();
     }
 
     @SuppressWarnings("rawtypes")
-    private Listener getFirstListener()
+    public Listener listener()
     {
-        Iterator<SelectionKey> selectedIter = _selectedKeys.iterator();
-
-        while(selectedIter.hasNext())
-        {
-            SelectionKey key = selectedIter.next();
-            selectedIter.remove();
-            if(key.isAcceptable())
-            {
-                return (Listener) key.attachment();
-            }
-        }
-        return null;
+        SelectionKey key = nextSelectedKey(SelectionKey.OP_ACCEPT);
+        return key == null ? null : (Listener) key.attachment();
     }
 
-    @SuppressWarnings("rawtypes")
-    public Connector connector()
-    {
-        Connector connector = null;
-        connector = getFirstConnector();
-        if(connector == null)
-        {
-            try
-            {
-                selectNow();
-            }
-            catch (IOException e)
-            {
-                _logger.log(Level.SEVERE, "Exception when selecting",e);
-                throw new RuntimeException(e);
-            }
-            connector = getFirstConnector();
-        }
-        return connector;
-    }
-
-    @SuppressWarnings("rawtypes")
-    private Connector getFirstConnector()
+    public void destroy()
     {
-        Iterator<SelectionKey> selectedIter = _selectedKeys.iterator();
-
-        while(selectedIter.hasNext())
+        for(DriverLoopImpl loop : _loops)
         {
-            SelectionKey key = selectedIter.next();
-            selectedIter.remove();
-            if(key.isReadable() || key.isWritable())
+            if(loop != this)
             {
-                return (Connector) key.attachment();
-
+                loop.close();
             }
         }
-        return null;
-    }
-
-
-    public void destroy()
-    {
-        try
-        {
-            _selector.close();
-        }
-        catch (IOException e)
-        {
-            _logger.log(Level.SEVERE, "Exception when closing selector",e);
-            throw new RuntimeException(e);
-        }
+        close();
     }
 
     public <C> Listener<C> createListener(String host, int port, C context)
     {
         try
         {
+            if(UnixSockets.isPath(host))
+            {
+                ServerSocketChannel serverSocketChannel = UnixSockets.openServerChannel();
+                serverSocketChannel.configureBlocking(false);
+                UnixSockets.bind(serverSocketChannel, host);
+                return createListener(serverSocketChannel, context);
+            }
             ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
             serverSocketChannel.configureBlocking(false);
             ServerSocket serverSocket = serverSocketChannel.socket();
@@ -192,8 +123,7 @@ public class DriverImpl implements Driver
     public <C> Listener<C> createListener(ServerSocketChannel c, C context)
     {
         Listener<C> l = new ListenerImpl<C>(this, c, context);
-        SelectionKey key = registerInterest(c,SelectionKey.OP_ACCEPT);
-        key.attach(l);
+        registerInterest(c, SelectionKey.OP_ACCEPT, l);
         return l;
     }
 
@@ -201,9 +131,9 @@ public class DriverImpl implements Driver
     {
         try
         {
-            SocketChannel channel = SocketChannel.open();
+            SocketChannel channel = UnixSockets.isPath(host) ? UnixSockets.openChannel() : SocketChannel.open();
             channel.configureBlocking(false);
-            channel.connect(new InetSocketAddress(host, port));
+            channel.connect(UnixSockets.isPath(host) ? UnixSockets.address(host) : new InetSocketAddress(host, port));
             return createConnector(channel, context);
         }
         catch (IOException e)
@@ -216,30 +146,44 @@ public class DriverImpl implements Driver
 
     public <C> Connector<C> createConnector(SelectableChannel c, C context)
     {
-        SelectionKey key = registerInterest(c,SelectionKey.OP_READ);
-        Connector<C> co = new ConnectorImpl<C>(this, null, new SaslClientImpl(),(SocketChannel)c, context, key);
-        key.attach(co);
-        return co;
+        DriverLoopImpl loop = nextLoop();
+        return assign(loop, new ConnectorImpl<C>(loop, null, new SaslClientImpl(),(SocketChannel)c, context));
     }
 
     protected <C> Connector<C> createServerConnector(SelectableChannel c, C context, Listener<C> l)
     {
-        SelectionKey key = registerInterest(c,SelectionKey.OP_READ);
-        Connector<C> co = new ConnectorImpl<C>(this, l, new SaslServerImpl(),(SocketChannel)c, context, key);
-        key.attach(co);
-        return co;
+        DriverLoopImpl loop = nextLoop();
+        return assign(loop, new ConnectorImpl<C>(loop, l, new SaslServerImpl(),(SocketChannel)c, context));
     }
 
-    private <C> SelectionKey registerInterest(SelectableChannel c, int opKeys)
+    private <C> Connector<C> assign(DriverLoopImpl loop, ConnectorImpl<C> connector)
     {
-        try
+        if(loop == this)
         {
-            return c.register(_selector, opKeys);
+            register(connector);
         }
-        catch (ClosedChannelException e)
+        else
         {
-            e.printStackTrace();  // TODO - Implement
-            throw new RuntimeException(e);
+            loop.handOver(connector);
+        }
+        return connector;
+    }
+
+    /**
+     * @return the loop with the fewest connectors, taking turns between equally loaded loops
+     */
+    private DriverLoopImpl nextLoop()
+    {
+        int start = _nextLoop++ % _loops.length;
+        DriverLoopImpl loop = _loops[start];
+        for(int i = 1; i < _loops.length; i++)
+        {
+            DriverLoopImpl candidate = _loops[(start + i) % _loops.length];
+            if(candidate.getConnectorCount() < loop.getConnectorCount())
+            {
+                loop = candidate;
+            }
         }
+        return loop;
     }
 }
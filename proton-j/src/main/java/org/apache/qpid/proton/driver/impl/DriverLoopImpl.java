@@ -0,0 +1,350 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.DriverLoop;
+
+class DriverLoopImpl implements DriverLoop
+{
+    private final Selector _selector;
+    private Set<SelectionKey> _selectedKeys = Collections.emptySet();
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private final List<ConnectorImpl<?>> _deferredFlushes = new ArrayList<ConnectorImpl<?>>();
+    // connectors that reached their read quota, serviced again once the others have had a turn
+    private final List<ConnectorImpl<?>> _deferredReads = new ArrayList<ConnectorImpl<?>>();
+    private final Queue<ConnectorImpl<?>> _readsDue = new LinkedList<ConnectorImpl<?>>();
+    // connectors that stopped reading because the application is behind, read again once it catches up
+    private final List<ConnectorImpl<?>> _inputBlocked = new ArrayList<ConnectorImpl<?>>();
+
+    // connectors handed over by other threads, registered by the loop's own thread
+    private final Queue<ConnectorImpl<?>> _handedOver = new ConcurrentLinkedQueue<ConnectorImpl<?>>();
+    private final Queue<ConnectorImpl<?>> _newConnectors = new LinkedList<ConnectorImpl<?>>();
+    // connectors with commands queued by other threads
+    private final Queue<ConnectorImpl<?>> _commandsScheduled = new ConcurrentLinkedQueue<ConnectorImpl<?>>();
+    private final AtomicInteger _connectorCount = new AtomicInteger();
+
+    DriverLoopImpl() throws IOException
+    {
+        _selector = Selector.open();
+    }
+
+    public void wakeup()
+    {
+        _selector.wakeup();
+    }
+
+    public void doWait(int timeout)
+    {
+        try
+        {
+            registerHandedOver();
+            _readsDue.addAll(_deferredReads);
+            _deferredReads.clear();
+            resumeInput();
+            // don't sleep past the point where held back output is due to be written
+            long flushDelay = nextFlushDelay();
+            if (flushDelay == 0 || !_newConnectors.isEmpty() || !_commandsScheduled.isEmpty() || !_readsDue.isEmpty())
+            {
+                _selector.selectNow();
+            }
+            else if (flushDelay > 0 && (timeout <= 0 || flushDelay < timeout))
+            {
+                _selector.select(flushDelay);
+            }
+            else
+            {
+                _selector.select(timeout);
+            }
+            _selectedKeys = _selector.selectedKeys();
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when waiting for IO Event",e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Connector<?> connector()
+    {
+        Connector<?> connector = _newConnectors.poll();
+        if(connector == null)
+        {
+            connector = _commandsScheduled.poll();
+        }
+        if(connector == null)
+        {
+            connector = getFirstConnector();
+        }
+        if(connector == null)
+        {
+            connector = getReadDueConnector();
+        }
+        if(connector == null)
+        {
+            registerHandedOver();
+            connector = _newConnectors.poll();
+        }
+        if(connector == null)
+        {
+            selectNow();
+            connector = getFirstConnector();
+        }
+        return connector;
+    }
+
+    public int getConnectorCount()
+    {
+        return _connectorCount.get();
+    }
+
+    /**
+     * Registers a connector from the thread that drives this loop.
+     */
+    void register(ConnectorImpl<?> connector)
+    {
+        _connectorCount.incrementAndGet();
+        connector.setKey(registerInterest(connector.getChannel(), SelectionKey.OP_READ, connector));
+    }
+
+    /**
+     * Passes a connector created on another thread to this loop, which registers it and returns
+     * it from {@link #connector()} the next time it is driven.
+     */
+    void handOver(ConnectorImpl<?> connector)
+    {
+        _connectorCount.incrementAndGet();
+        _handedOver.add(connector);
+        _selector.wakeup();
+    }
+
+    private void registerHandedOver()
+    {
+        ConnectorImpl<?> connector;
+        while((connector = _handedOver.poll()) != null)
+        {
+            connector.setKey(registerInterest(connector.getChannel(), SelectionKey.OP_READ, connector));
+            _newConnectors.add(connector);
+        }
+    }
+
+    void scheduleCommands(ConnectorImpl<?> connector)
+    {
+        _commandsScheduled.add(connector);
+        _selector.wakeup();
+    }
+
+    void connectorClosed()
+    {
+        _connectorCount.decrementAndGet();
+    }
+
+    SelectionKey registerInterest(SelectableChannel c, int opKeys, Object attachment)
+    {
+        try
+        {
+            return c.register(_selector, opKeys, attachment);
+        }
+        catch (ClosedChannelException e)
+        {
+            e.printStackTrace();  // TODO - Implement
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the first selected key that is ready for any of the given operations, selecting
+     *         again if there is none; keys ready for other operations are left for their consumer
+     */
+    SelectionKey nextSelectedKey(int readyOps)
+    {
+        SelectionKey key = getFirstSelectedKey(readyOps);
+        if(key == null)
+        {
+            selectNow();
+            key = getFirstSelectedKey(readyOps);
+        }
+        return key;
+    }
+
+    private SelectionKey getFirstSelectedKey(int readyOps)
+    {
+        Iterator<SelectionKey> selectedIter = _selectedKeys.iterator();
+
+        while(selectedIter.hasNext())
+        {
+            SelectionKey key = selectedIter.next();
+            if(!key.isValid())
+            {
+                selectedIter.remove();
+            }
+            else if((key.readyOps() & readyOps) != 0)
+            {
+                selectedIter.remove();
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private void selectNow()
+    {
+        try
+        {
+            _selector.selectNow();
+            _selectedKeys = _selector.selectedKeys();
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when selecting",e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Connector<?> getFirstConnector()
+    {
+        SelectionKey key = getFirstSelectedKey(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return key == null ? getFlushDueConnector() : (Connector<?>) key.attachment();
+    }
+
+    void deferRead(ConnectorImpl<?> connector)
+    {
+        _deferredReads.add(connector);
+    }
+
+    void blockInput(ConnectorImpl<?> connector)
+    {
+        _inputBlocked.add(connector);
+    }
+
+    private void resumeInput()
+    {
+        Iterator<ConnectorImpl<?>> iter = _inputBlocked.iterator();
+        while(iter.hasNext())
+        {
+            ConnectorImpl<?> connector = iter.next();
+            if(!connector.isInputBlocked() || connector.isClosed())
+            {
+                iter.remove();
+            }
+            else if(connector.hasInputCapacity())
+            {
+                iter.remove();
+                _readsDue.add(connector);
+            }
+        }
+    }
+
+    private Connector<?> getReadDueConnector()
+    {
+        ConnectorImpl<?> connector;
+        while((connector = _readsDue.poll()) != null)
+        {
+            // skip those already serviced in this pass
+            if(connector.isReadDeferred() || connector.isInputBlocked())
+            {
+                return connector;
+            }
+        }
+        return null;
+    }
+
+    void deferFlush(ConnectorImpl<?> connector)
+    {
+        _deferredFlushes.add(connector);
+    }
+
+    /**
+     * @return the milliseconds until the earliest held back output is due, zero if some is due
+     *         now, or -1 if there is none
+     */
+    private long nextFlushDelay()
+    {
+        long delay = -1;
+        long now = System.nanoTime();
+        Iterator<ConnectorImpl<?>> iter = _deferredFlushes.iterator();
+        while(iter.hasNext())
+        {
+            ConnectorImpl<?> connector = iter.next();
+            if(!connector.isFlushPending())
+            {
+                iter.remove();
+                continue;
+            }
+            long remaining = Math.max(0L, (connector.getFlushAt() - now + 999999L) / 1000000L);
+            if(delay < 0 || remaining < delay)
+            {
+                delay = remaining;
+            }
+        }
+        return delay;
+    }
+
+    private Connector<?> getFlushDueConnector()
+    {
+        long now = System.nanoTime();
+        Iterator<ConnectorImpl<?>> iter = _deferredFlushes.iterator();
+        while(iter.hasNext())
+        {
+            ConnectorImpl<?> connector = iter.next();
+            if(!connector.isFlushPending())
+            {
+                iter.remove();
+            }
+            else if(now - connector.getFlushAt() >= 0)
+            {
+                iter.remove();
+                return connector;
+            }
+        }
+        return null;
+    }
+
+    void close()
+    {
+        try
+        {
+            _selector.close();
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when closing selector",e);
+            throw new RuntimeException(e);
+        }
+    }
+}
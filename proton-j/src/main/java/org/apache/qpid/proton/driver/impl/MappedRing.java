@@ -0,0 +1,254 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A single producer, single consumer ring of bytes in a region of a mapped file, shared by two
+ * processes. Each side only ever advances its own index: the producer the tail, the consumer the
+ * head. Both are counts of bytes since the ring was created, so they never wrap.
+ *
+ * An index is published with a release store and read with an acquire load, so the bytes written
+ * before a tail is stored are seen by the process which loads it, and bytes are not overwritten
+ * before the head that frees them has been stored. A mapped buffer has neither on the JDKs this
+ * module builds for, so they are Unsafe's putOrderedLong and getLongVolatile on the mapped
+ * address, reached by reflection. Where Unsafe cannot be found the indices fall back to plain
+ * accesses, which are only ordered on processors that keep stores in order.
+ */
+final class MappedRing
+{
+    // the indices are a cache line apart so that the two sides do not contend for one line
+    private static final int TAIL = 0;
+    private static final int CLOSED = 8;
+    private static final int HEAD = 64;
+    private static final int DATA = 128;
+
+    private static final Object UNSAFE;
+    private static final Method PUT_ORDERED_LONG;
+    private static final Method GET_LONG_VOLATILE;
+    private static final Method GET_LONG;
+    private static final long ADDRESS_OFFSET;
+
+    static
+    {
+        Object unsafe = null;
+        Method putOrderedLong = null;
+        Method getLongVolatile = null;
+        Method getLong = null;
+        long addressOffset = -1L;
+        try
+        {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            putOrderedLong = type.getMethod("putOrderedLong", Object.class, long.class, long.class);
+            getLongVolatile = type.getMethod("getLongVolatile", Object.class, long.class);
+            getLong = type.getMethod("getLong", Object.class, long.class);
+            Object instance = field.get(null);
+            addressOffset = (Long) type.getMethod("objectFieldOffset", Field.class)
+                                       .invoke(instance, Buffer.class.getDeclaredField("address"));
+            unsafe = instance;
+        }
+        catch (ClassNotFoundException e)
+        {
+            // plain accesses are used instead
+        }
+        catch (NoSuchFieldException e)
+        {
+            // plain accesses are used instead
+        }
+        catch (NoSuchMethodException e)
+        {
+            // plain accesses are used instead
+        }
+        catch (IllegalAccessException e)
+        {
+            // plain accesses are used instead
+        }
+        catch (InvocationTargetException e)
+        {
+            // plain accesses are used instead
+        }
+        catch (RuntimeException e)
+        {
+            // a JDK which refuses access to Unsafe; plain accesses are used instead
+        }
+        UNSAFE = unsafe;
+        PUT_ORDERED_LONG = putOrderedLong;
+        GET_LONG_VOLATILE = getLongVolatile;
+        GET_LONG = getLong;
+        ADDRESS_OFFSET = addressOffset;
+    }
+
+    private final ByteBuffer _region;
+    private final ByteBuffer _data;
+    private final int _capacity;
+    private final long _address;
+
+    /**
+     * @param region the ring's region of the file
+     * @param capacity the number of data bytes, a power of two
+     */
+    MappedRing(ByteBuffer region, int capacity)
+    {
+        // Unsafe reads and writes the indices in the native order, so plain accesses must as well
+        _region = region.order(ByteOrder.nativeOrder());
+        _capacity = capacity;
+        region.position(DATA);
+        _data = region.slice();
+        region.position(0);
+        _address = UNSAFE != null && region.isDirect() ? (Long) invoke(GET_LONG, region, ADDRESS_OFFSET) : 0L;
+    }
+
+    /**
+     * @return the bytes a ring of the given capacity takes up in the file
+     */
+    static int size(int capacity)
+    {
+        return DATA + capacity;
+    }
+
+    /**
+     * @return the bytes the consumer may read
+     */
+    int available()
+    {
+        return (int) (load(TAIL) - load(HEAD));
+    }
+
+    /**
+     * @return the bytes the producer may write
+     */
+    int free()
+    {
+        return _capacity - available();
+    }
+
+    /**
+     * Producer side: copies as much of the given bytes into the ring as it has room for.
+     *
+     * @return the number of bytes copied
+     */
+    int write(byte[] src, int offset, int length)
+    {
+        long tail = _region.getLong(TAIL);
+        int count = Math.min(length, _capacity - (int) (tail - load(HEAD)));
+        int position = (int) tail & (_capacity - 1);
+        int first = Math.min(count, _capacity - position);
+        put(position, src, offset, first);
+        put(0, src, offset + first, count - first);
+        store(TAIL, tail + count);
+        return count;
+    }
+
+    /**
+     * Consumer side: copies as many bytes out of the ring as are available and fit.
+     *
+     * @return the number of bytes copied
+     */
+    int read(byte[] dst, int offset, int length)
+    {
+        long head = _region.getLong(HEAD);
+        int count = Math.min(length, (int) (load(TAIL) - head));
+        int position = (int) head & (_capacity - 1);
+        int first = Math.min(count, _capacity - position);
+        get(position, dst, offset, first);
+        get(0, dst, offset + first, count - first);
+        store(HEAD, head + count);
+        return count;
+    }
+
+    private void put(int position, byte[] src, int offset, int length)
+    {
+        if (length > 0)
+        {
+            _data.position(position);
+            _data.put(src, offset, length);
+        }
+    }
+
+    private void get(int position, byte[] dst, int offset, int length)
+    {
+        if (length > 0)
+        {
+            _data.position(position);
+            _data.get(dst, offset, length);
+        }
+    }
+
+    /**
+     * Producer side: tells the consumer that no more bytes will be written.
+     */
+    void close()
+    {
+        store(CLOSED, 1L);
+    }
+
+    boolean isClosed()
+    {
+        return load(CLOSED) != 0L;
+    }
+
+    /**
+     * Loads an index written by the other process, with acquire semantics.
+     */
+    private long load(int index)
+    {
+        return _address != 0L ? (Long) invoke(GET_LONG_VOLATILE, null, _address + index) : _region.getLong(index);
+    }
+
+    /**
+     * Stores an index for the other process to read, with release semantics.
+     */
+    private void store(int index, long value)
+    {
+        if (_address != 0L)
+        {
+            invoke(PUT_ORDERED_LONG, null, _address + index, value);
+        }
+        else
+        {
+            _region.putLong(index, value);
+        }
+    }
+
+    private static Object invoke(Method method, Object... args)
+    {
+        try
+        {
+            return method.invoke(UNSAFE, args);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
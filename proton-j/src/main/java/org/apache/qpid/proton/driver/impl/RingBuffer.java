@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed size ring of bytes between a socket and a transport. The socket side reads into or
+ * writes from both free or filled regions at once through scattering and gathering channel
+ * operations, and the transport side consumes or produces bytes in place in the backing array,
+ * so bytes left over by either side are never moved.
+ */
+class RingBuffer
+{
+    private final byte[] _bytes;
+    private final ByteBuffer[] _views;
+    private int _head;
+    private int _size;
+
+    RingBuffer(int capacity)
+    {
+        _bytes = new byte[capacity];
+        _views = new ByteBuffer[] { ByteBuffer.wrap(_bytes), ByteBuffer.wrap(_bytes) };
+    }
+
+    byte[] array()
+    {
+        return _bytes;
+    }
+
+    int size()
+    {
+        return _size;
+    }
+
+    int free()
+    {
+        return _bytes.length - _size;
+    }
+
+    /**
+     * @return the offset of the first filled byte
+     */
+    int filledOffset()
+    {
+        return _head;
+    }
+
+    /**
+     * @return the number of filled bytes that follow {@link #filledOffset()} without wrapping
+     */
+    int filledContiguous()
+    {
+        return Math.min(_size, _bytes.length - _head);
+    }
+
+    /**
+     * @return the offset of the first free byte
+     */
+    int freeOffset()
+    {
+        return (_head + _size) % _bytes.length;
+    }
+
+    /**
+     * @return the number of free bytes that follow {@link #freeOffset()} without wrapping
+     */
+    int freeContiguous()
+    {
+        int tail = _head + _size;
+        return tail < _bytes.length ? _bytes.length - tail : _head - (tail - _bytes.length);
+    }
+
+    /**
+     * @return views over the filled bytes in order; the second is empty unless they wrap around
+     */
+    ByteBuffer[] filledViews()
+    {
+        int first = filledContiguous();
+        setView(_views[0], _head, first);
+        setView(_views[1], 0, _size - first);
+        return _views;
+    }
+
+    /**
+     * @return views over the free bytes in order; the second is empty unless they wrap around
+     */
+    ByteBuffer[] freeViews()
+    {
+        int first = freeContiguous();
+        setView(_views[0], freeOffset(), first);
+        setView(_views[1], 0, free() - first);
+        return _views;
+    }
+
+    private static void setView(ByteBuffer view, int offset, int length)
+    {
+        view.clear();
+        view.limit(offset + length);
+        view.position(offset);
+    }
+
+    void produced(int length)
+    {
+        _size += length;
+    }
+
+    void consumed(int length)
+    {
+        _size -= length;
+        // start again at the front once empty so the next fill is a single region
+        _head = _size == 0 ? 0 : (_head + length) % _bytes.length;
+    }
+}
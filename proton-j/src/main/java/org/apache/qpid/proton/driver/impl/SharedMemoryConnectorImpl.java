@@ -0,0 +1,255 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.Sasl;
+
+/**
+ * A connector to another process through a pair of rings in a shared file.
+ *
+ * A poller thread watches the rings, and hands the connector to the application once input has
+ * arrived or room has been made for output that did not fit. It spins for pn.shm_spin_count
+ * checks, then parks for pn.shm_park_us microseconds between checks, since a process cannot
+ * be woken by another without a system call. While there is nothing for it to watch it parks
+ * until {@link #process()} wakes it.
+ */
+class SharedMemoryConnectorImpl<C> extends AbstractConnectorImpl<C> implements Schedulable
+{
+    private static int spinCount = Integer.getInteger("pn.shm_spin_count", 10000);
+    private static long parkNanos = Long.getLong("pn.shm_park_us", 50L) * 1000L;
+
+    private final SharedMemoryDriverImpl _driver;
+    private final FileChannel _file;
+    private final MappedRing _incoming;
+    private final MappedRing _outgoing;
+    private final AtomicBoolean _queued = new AtomicBoolean();
+
+    private volatile Thread _poller;
+    private volatile boolean _inputPending;
+    private volatile boolean _outputBlocked;
+    private volatile boolean _closed;
+
+    SharedMemoryConnectorImpl(SharedMemoryDriverImpl driver, Listener<C> listener, Sasl sasl,
+                              FileChannel file, MappedRing incoming, MappedRing outgoing, C context)
+    {
+        super(listener, sasl, context);
+        _driver = driver;
+        _file = file;
+        _incoming = incoming;
+        _outgoing = outgoing;
+    }
+
+    void start(ThreadFactory threadFactory)
+    {
+        Thread poller = threadFactory.newThread(new Runnable()
+        {
+            public void run()
+            {
+                poll();
+            }
+        });
+        _poller = poller;
+        poller.start();
+    }
+
+    private void poll()
+    {
+        int idle = 0;
+        while (!_closed)
+        {
+            boolean ready = false;
+            if (!_inputPending && (_incoming.available() > 0 || _incoming.isClosed()))
+            {
+                _inputPending = true;
+                ready = true;
+            }
+            if (_outputBlocked && _outgoing.free() > 0)
+            {
+                _outputBlocked = false;
+                ready = true;
+            }
+            if (ready)
+            {
+                idle = 0;
+                post();
+            }
+            else if (_inputPending && !_outputBlocked)
+            {
+                LockSupport.park(this);
+            }
+            else if (idle < spinCount)
+            {
+                idle++;
+            }
+            else
+            {
+                LockSupport.parkNanos(this, parkNanos);
+            }
+        }
+    }
+
+    public void process()
+    {
+        if (_closed)
+        {
+            setState(ConnectorState.CLOSED);
+            return;
+        }
+
+        boolean inputPending = _inputPending;
+        boolean endOfStream = false;
+        if (inputPending)
+        {
+            // once closed the peer writes nothing more, so an empty ring is then the end
+            endOfStream = _incoming.isClosed() && _incoming.available() == 0;
+            read();
+        }
+        runCommands();
+        write();
+        if (inputPending)
+        {
+            if (getReadBuffer().size() > 0)
+            {
+                // input held back until the SASL outcome was decided
+                processReadBuffer();
+            }
+            if (endOfStream)
+            {
+                setState(ConnectorState.EOS);
+            }
+            else if (getReadBuffer().size() == 0 && hasInputCapacity())
+            {
+                _inputPending = false;
+                LockSupport.unpark(_poller);
+            }
+            else if (!hasInputCapacity())
+            {
+                // the driver hands the connector back once the application has caught up
+                _driver.blockInput(this);
+            }
+        }
+    }
+
+    private void read()
+    {
+        RingBuffer readBuffer = getReadBuffer();
+        while (readBuffer.free() > 0 && hasInputCapacity())
+        {
+            int read = _incoming.read(readBuffer.array(), readBuffer.freeOffset(), readBuffer.freeContiguous());
+            if (read == 0)
+            {
+                break;
+            }
+            readBuffer.produced(read);
+            if (!processReadBuffer())
+            {
+                break;
+            }
+        }
+    }
+
+    private void write()
+    {
+        RingBuffer writeBuffer = getWriteBuffer();
+        boolean produced;
+        do
+        {
+            int pending = writeBuffer.size();
+            processOutput();
+            // a full buffer leaves no room to produce into, so try again once it drains
+            produced = writeBuffer.size() > pending || writeBuffer.free() == 0;
+            while (writeBuffer.size() > 0)
+            {
+                int written = _outgoing.write(writeBuffer.array(), writeBuffer.filledOffset(), writeBuffer.filledContiguous());
+                if (written == 0)
+                {
+                    break;
+                }
+                writeBuffer.consumed(written);
+            }
+        }
+        // the transport may have more output than fitted in the buffer
+        while (produced && writeBuffer.size() == 0);
+
+        if (writeBuffer.size() > 0 && !_outputBlocked)
+        {
+            _outputBlocked = true;
+            LockSupport.unpark(_poller);
+        }
+    }
+
+    public void dequeued()
+    {
+        _queued.set(false);
+    }
+
+    public void post()
+    {
+        if (_queued.compareAndSet(false, true))
+        {
+            _driver.ready(this);
+        }
+    }
+
+    void scheduleCommands()
+    {
+        post();
+    }
+
+    void connectorClosed()
+    {
+        _driver.connectorClosed();
+    }
+
+    void closeChannel() throws IOException
+    {
+        _file.close();
+    }
+
+    public void close()
+    {
+        if (getState() == ConnectorState.CLOSED)
+        {
+            return;
+        }
+
+        // frames queued behind output that did not fit would be lost with the close anyway
+        _closed = true;
+        _outgoing.close();
+        LockSupport.unpark(_poller);
+        try
+        {
+            closeChannel();
+        }
+        catch (IOException e)
+        {
+            // the mapping stays valid until it is collected
+        }
+        setState(ConnectorState.CLOSED);
+    }
+}
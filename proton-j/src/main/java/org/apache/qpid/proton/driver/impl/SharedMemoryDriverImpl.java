@@ -0,0 +1,153 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.SharedMemoryDriver;
+import org.apache.qpid.proton.engine.impl.SaslClientImpl;
+import org.apache.qpid.proton.engine.impl.SaslServerImpl;
+
+/**
+ * A driver for connections between processes on one host through shared files rather than
+ * sockets. The file holds one ring for each direction; the server creates it and the client
+ * opens it. The engine sees the same AMQP frames as over a socket.
+ */
+public class SharedMemoryDriverImpl extends AbstractDriverImpl implements SharedMemoryDriver
+{
+    private static int ringSize = Integer.getInteger("pn.shm_ring_size", 256 * 1024);
+
+    private static final int MAGIC = 0x414d5150; // "AMQP"
+    private static final int HEADER = 64;
+
+    private final ThreadFactory _threadFactory;
+    private final Logger _logger = Logger.getLogger("proton.driver");
+
+    public SharedMemoryDriverImpl()
+    {
+        this(daemonThreads());
+    }
+
+    /**
+     * @param threadFactory creates the thread which polls the rings of each connector
+     */
+    public SharedMemoryDriverImpl(ThreadFactory threadFactory)
+    {
+        _threadFactory = threadFactory;
+    }
+
+    public <C> Connector<C> createServerConnector(File file, C context)
+    {
+        RandomAccessFile raf = null;
+        try
+        {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            int capacity = Integer.highestOneBit(Math.max(ringSize - 1, 1)) << 1;
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 2 * MappedRing.size(capacity));
+            map.putInt(4, capacity);
+            // the client may open the file as soon as the magic number is in place
+            map.putInt(0, MAGIC);
+            return start(new SharedMemoryConnectorImpl<C>(this, null, new SaslServerImpl(), channel,
+                                                          ring(map, 0, capacity), ring(map, 1, capacity), context));
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when creating connection file",e);
+            close(raf);
+        }
+        return null;
+    }
+
+    public <C> Connector<C> createConnector(File file, C context)
+    {
+        RandomAccessFile raf = null;
+        try
+        {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if(map.capacity() < HEADER || map.getInt(0) != MAGIC)
+            {
+                throw new IOException("Not a connection file: " + file);
+            }
+            int capacity = map.getInt(4);
+            return start(new SharedMemoryConnectorImpl<C>(this, null, new SaslClientImpl(), channel,
+                                                          ring(map, 1, capacity), ring(map, 0, capacity), context));
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when opening connection file",e);
+            close(raf);
+        }
+        return null;
+    }
+
+    private void close(RandomAccessFile raf)
+    {
+        if(raf != null)
+        {
+            try
+            {
+                raf.close();
+            }
+            catch (IOException e)
+            {
+                _logger.log(Level.SEVERE, "Exception when closing connection file",e);
+            }
+        }
+    }
+
+    /**
+     * @return ring 0, from the client to the server, or ring 1, from the server to the client
+     */
+    private static MappedRing ring(MappedByteBuffer map, int index, int capacity)
+    {
+        ByteBuffer region = map.duplicate();
+        region.position(HEADER + index * MappedRing.size(capacity));
+        region.limit(region.position() + MappedRing.size(capacity));
+        return new MappedRing(region.slice(), capacity);
+    }
+
+    private <C> Connector<C> start(SharedMemoryConnectorImpl<C> connector)
+    {
+        connectorOpened();
+        // returned once before any input so that it can be set up by the application
+        connector.post();
+        connector.start(_threadFactory);
+        return connector;
+    }
+
+    public void destroy()
+    {
+        wakeup();
+    }
+}
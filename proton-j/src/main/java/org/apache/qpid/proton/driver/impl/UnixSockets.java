@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Opens Unix domain socket channels, for drivers given a path rather than a host name.
+ *
+ * These channels only exist from Java 16 while this module is built for older JDKs, so they are
+ * reached by reflection; opening one on a JDK without them fails with an IOException.
+ */
+final class UnixSockets
+{
+    private UnixSockets()
+    {
+    }
+
+    /**
+     * @return true if the host is an absolute path naming a Unix domain socket
+     */
+    static boolean isPath(String host)
+    {
+        return host != null && host.startsWith("/");
+    }
+
+    static SocketChannel openChannel() throws IOException
+    {
+        return (SocketChannel) open(SocketChannel.class);
+    }
+
+    static ServerSocketChannel openServerChannel() throws IOException
+    {
+        return (ServerSocketChannel) open(ServerSocketChannel.class);
+    }
+
+    /**
+     * Binds a channel from {@link #openServerChannel()} to the given path.
+     */
+    static void bind(ServerSocketChannel channel, String path) throws IOException
+    {
+        invoke(ServerSocketChannel.class, "bind", new Class<?>[] {SocketAddress.class}, channel, address(path));
+    }
+
+    /**
+     * @return the address of the socket at the given path
+     */
+    static SocketAddress address(String path) throws IOException
+    {
+        try
+        {
+            return (SocketAddress) invoke(Class.forName("java.net.UnixDomainSocketAddress"), "of",
+                                          new Class<?>[] {String.class}, null, path);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw unsupported(e);
+        }
+    }
+
+    private static Object open(Class<?> channelClass) throws IOException
+    {
+        try
+        {
+            Object unix = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+            return invoke(channelClass, "open", new Class<?>[] {Class.forName("java.net.ProtocolFamily")}, null, unix);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw unsupported(e);
+        }
+        catch (NoSuchFieldException e)
+        {
+            throw unsupported(e);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw unsupported(e);
+        }
+    }
+
+    private static Object invoke(Class<?> type, String name, Class<?>[] parameterTypes, Object target, Object... args)
+        throws IOException
+    {
+        try
+        {
+            return type.getMethod(name, parameterTypes).invoke(target, args);
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw unsupported(e);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw unsupported(e);
+        }
+        catch (InvocationTargetException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static IOException unsupported(Exception e)
+    {
+        return new IOException("Unix domain sockets need Java 16 or later", e);
+    }
+}
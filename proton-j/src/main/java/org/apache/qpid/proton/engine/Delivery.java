@@ -55,6 +55,18 @@ public interface Delivery
 
     public void free();
 
+    /**
+     * Sets the priority of an outgoing delivery, initially that of its link.
+     *
+     * When output is limited, by the session window or by the space available to the transport,
+     * frames of higher priority deliveries are written first. Deliveries of equal priority share
+     * the output in turn. The priority is local only; it would typically be the message's
+     * header priority.
+     */
+    public void setPriority(int priority);
+
+    public int getPriority();
+
     public Delivery getWorkNext();
 
     public boolean isWritable();
@@ -20,6 +20,9 @@
  */
 package org.apache.qpid.proton.engine;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
 
 /**
  * Receiver
@@ -45,5 +48,26 @@ public interface Receiver extends Link
      */
     public int recv(byte[] bytes, int offset, int size);
 
+    /**
+     * Receive all the message data buffered so far for the current delivery, without copying it.
+     *
+     * The returned buffers are read-only views of the received frame payloads, in order, and
+     * are released from the delivery by this call.
+     *
+     * @return the buffered data, empty if none is available yet, or null if there is no more
+     *         data for the current delivery.
+     */
+    public ByteBuffer[] recvChunks();
+
+    /**
+     * Returns a channel over the message data of the current delivery, which stays bound to that
+     * delivery after the link advances.
+     *
+     * Reads return the data received so far, or zero if none is available yet, and end of stream
+     * once the delivery is complete and fully read. Session window is returned to the sender as
+     * data is consumed, so a slow reader holds back further transfers rather than buffering them.
+     */
+    public ReadableByteChannel channel();
+
     public void drain(int credit);
 }
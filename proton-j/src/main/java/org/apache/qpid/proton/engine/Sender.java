@@ -20,6 +20,8 @@
  */
 package org.apache.qpid.proton.engine;
 
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * Sender
@@ -37,6 +39,25 @@ public interface Sender extends Link
      */
     public void offer(int credits);
 
+    /**
+     * Sets the priority given to this link's new deliveries, 4 by default.
+     *
+     * @see Delivery#setPriority(int)
+     */
+    public void setPriority(int priority);
+
+    public int getPriority();
+
+    /**
+     * Creates a new delivery whose tag is generated by the link.
+     *
+     * Tags are sequential and encoded in as few bytes as possible; no tag array is
+     * allocated unless {@link Delivery#getTag()} is called.
+     *
+     * @return the new delivery
+     */
+    public Delivery delivery();
+
     /**
      * Sends message data for the current delivery.
      *
@@ -44,6 +65,32 @@ public interface Sender extends Link
      */
     public int send(byte[] bytes, int offset, int length);
 
+    /**
+     * Streams the remaining message data for the current delivery from the given source.
+     *
+     * The transport reads from the source only as much as fits in the next transfer frame, and
+     * only while the session has outgoing window, so the data is never held in full. The
+     * delivery is complete once the source reaches end of stream and the link has been advanced.
+     * A non-blocking source that has no data available is simply retried on the next output.
+     * Any data already passed to {@link #send(byte[], int, int)} is sent first.
+     *
+     * @param source the message data; it is not closed by the transport
+     */
+    public void send(ReadableByteChannel source);
+
+    /**
+     * Sends a region of a file as the remaining message data for the current delivery.
+     *
+     * The region is memory mapped a window at a time and each transfer frame's payload is
+     * copied straight from the mapping into the transport output, once. The data does not go
+     * through the delivery's own buffer.
+     *
+     * @param file the file, which is not closed by the transport
+     * @param position the offset in the file at which the data starts
+     * @param count the number of bytes to send
+     */
+    public void send(FileChannel file, long position, long count);
+
 
     /**
      * Abort the current delivery.
@@ -54,4 +54,24 @@ public interface Transport extends Endpoint
 
     Sasl sasl();
 
+    /**
+     * Sets the batchable hint on outgoing transfers, telling the peer that it need not urgently
+     * report updated delivery state. Suits connections whose own output is coalesced.
+     */
+    void setBatchable(boolean batchable);
+
+    /**
+     * @return the number of bytes of input the transport is prepared to accept, zero once the
+     *         incoming delivery data that the application has not yet read reaches the limit
+     *         set by {@link #setMaxBufferedInput(int)}
+     */
+    int capacity();
+
+    /**
+     * Limits the incoming delivery data held in memory for the application to read, beyond
+     * which {@link #capacity()} reports no room. Defaults to pn.max_buffered_input; zero or
+     * less means no limit.
+     */
+    void setMaxBufferedInput(int bytes);
+
 }
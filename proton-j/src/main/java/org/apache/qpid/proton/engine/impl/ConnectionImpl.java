@@ -30,9 +30,13 @@ public class ConnectionImpl extends EndpointImpl implements Connection
 {
 
     public static final int MAX_CHANNELS = 255;
+    private static final boolean RECYCLE_OBJECTS = Boolean.getBoolean("pn.recycle_objects");
+    private static final int SPILL_THRESHOLD = Integer.getInteger("pn.spill_threshold", 0);
     private List<SessionImpl> _sessions = new ArrayList<SessionImpl>();
-    private EndpointImpl _transportTail;
-    private EndpointImpl _transportHead;
+    private EndpointImpl _transportSessionHead;
+    private EndpointImpl _transportSessionTail;
+    private EndpointImpl _transportLinkHead;
+    private EndpointImpl _transportLinkTail;
     private int _maxChannels = MAX_CHANNELS;
 
     private LinkNode<SessionImpl> _sessionHead;
@@ -46,13 +50,18 @@ public class ConnectionImpl extends EndpointImpl implements Connection
     private DeliveryImpl _workHead;
     private DeliveryImpl _workTail;
 
-    private DeliveryImpl _transportWorkHead;
-    private DeliveryImpl _transportWorkTail;
+    private DeliveryImpl _transportSenderWorkHead;
+    private DeliveryImpl _transportSenderWorkTail;
+    private DeliveryImpl _transportReceiverWorkHead;
+    private DeliveryImpl _transportReceiverWorkTail;
     private String _localContainerId = "";
     private String _localHostname = "";
     private boolean _bound;
     private String _remoteContainer;
     private String _remoteHostname;
+    private boolean _objectRecycling = RECYCLE_OBJECTS;
+    private int _spillThreshold = SPILL_THRESHOLD;
+    private int _incomingBytes;
 
     public ConnectionImpl()
     {
@@ -183,47 +192,79 @@ public class ConnectionImpl extends EndpointImpl implements Connection
     }
 
 
-    EndpointImpl getTransportHead()
+    EndpointImpl getTransportSessionHead()
     {
-        return _transportHead;
+        return _transportSessionHead;
     }
 
-    EndpointImpl getTransportTail()
+    EndpointImpl getTransportLinkHead()
     {
-        return _transportTail;
+        return _transportLinkHead;
+    }
+
+    boolean hasTransportWork()
+    {
+        return _transportSessionHead != null
+               || _transportLinkHead != null
+               || _transportSenderWorkHead != null
+               || _transportReceiverWorkHead != null;
     }
 
     void addModified(EndpointImpl endpoint)
     {
-        if(_transportTail == null)
+        endpoint.setTransportNext(null);
+        if(endpoint instanceof SessionImpl)
         {
-            endpoint.setTransportNext(null);
-            endpoint.setTransportPrev(null);
-            _transportHead = _transportTail = endpoint;
+            if(_transportSessionTail == null)
+            {
+                endpoint.setTransportPrev(null);
+                _transportSessionHead = _transportSessionTail = endpoint;
+            }
+            else
+            {
+                _transportSessionTail.setTransportNext(endpoint);
+                endpoint.setTransportPrev(_transportSessionTail);
+                _transportSessionTail = endpoint;
+            }
         }
         else
         {
-            _transportTail.setTransportNext(endpoint);
-            endpoint.setTransportPrev(_transportTail);
-            _transportTail = endpoint;
-            _transportTail.setTransportNext(null);
+            if(_transportLinkTail == null)
+            {
+                endpoint.setTransportPrev(null);
+                _transportLinkHead = _transportLinkTail = endpoint;
+            }
+            else
+            {
+                _transportLinkTail.setTransportNext(endpoint);
+                endpoint.setTransportPrev(_transportLinkTail);
+                _transportLinkTail = endpoint;
+            }
         }
     }
 
     void removeModified(EndpointImpl endpoint)
     {
-        if(_transportHead == endpoint)
+        if(_transportSessionHead == endpoint)
         {
-            _transportHead = endpoint.transportNext();
+            _transportSessionHead = endpoint.transportNext();
+        }
+        else if(_transportLinkHead == endpoint)
+        {
+            _transportLinkHead = endpoint.transportNext();
         }
         else
         {
             endpoint.transportPrev().setTransportNext(endpoint.transportNext());
         }
 
-        if(_transportTail == endpoint)
+        if(_transportSessionTail == endpoint)
+        {
+            _transportSessionTail = endpoint.transportPrev();
+        }
+        else if(_transportLinkTail == endpoint)
         {
-            _transportTail = endpoint.transportPrev();
+            _transportLinkTail = endpoint.transportPrev();
         }
         else
         {
@@ -333,6 +374,59 @@ public class ConnectionImpl extends EndpointImpl implements Connection
         return new WorkSequence(_workHead);
     }
 
+    public boolean isObjectRecycling()
+    {
+        return _objectRecycling;
+    }
+
+    /**
+     * When enabled, the transport reuses its transfer, disposition and flow bodies for every
+     * frame it writes, and deliveries which are settled on both sides are returned to a pool
+     * on their link once freed. The application must not touch a delivery after freeing it.
+     */
+    public void setObjectRecycling(boolean objectRecycling)
+    {
+        _objectRecycling = objectRecycling;
+    }
+
+    public int getSpillThreshold()
+    {
+        return _spillThreshold;
+    }
+
+    /**
+     * Sets the size beyond which the data of an incoming delivery is moved from the heap to a
+     * memory mapped temporary file. Defaults to pn.spill_threshold; zero means never.
+     */
+    public void setSpillThreshold(int spillThreshold)
+    {
+        _spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Discards the spilled data of deliveries which can no longer complete.
+     */
+    void releaseIncompleteSpills()
+    {
+        for(LinkNode<LinkImpl> node = _linkHead; node != null; node = node.getNext())
+        {
+            node.getValue().releaseSpills(true);
+        }
+    }
+
+    /**
+     * @return the bytes of incoming delivery data held on the heap until the application reads it
+     */
+    int getIncomingBytes()
+    {
+        return _incomingBytes;
+    }
+
+    void incomingBytesChanged(int delta)
+    {
+        _incomingBytes += delta;
+    }
+
     public void setBound(boolean bound)
     {
         _bound = true;
@@ -363,41 +457,87 @@ public class ConnectionImpl extends EndpointImpl implements Connection
         }
     }
 
-    DeliveryImpl getTransportWorkHead()
+    DeliveryImpl getTransportSenderWorkHead()
+    {
+        return _transportSenderWorkHead;
+    }
+
+    DeliveryImpl getTransportReceiverWorkHead()
     {
-        return _transportWorkHead;
+        return _transportReceiverWorkHead;
+    }
+
+    boolean isTransportWorkHead(DeliveryImpl delivery)
+    {
+        return _transportSenderWorkHead == delivery || _transportReceiverWorkHead == delivery;
     }
 
     public void removeTransportWork(DeliveryImpl delivery)
     {
-        DeliveryImpl oldHead = _transportWorkHead;
-        DeliveryImpl oldTail = _transportWorkTail;
-        if(_transportWorkHead == delivery)
+        if(_transportSenderWorkHead == delivery)
+        {
+            _transportSenderWorkHead = delivery.getTransportWorkNext();
+        }
+        else if(_transportReceiverWorkHead == delivery)
         {
-            _transportWorkHead = delivery.getTransportWorkNext();
+            _transportReceiverWorkHead = delivery.getTransportWorkNext();
+        }
 
+        if(_transportSenderWorkTail == delivery)
+        {
+            _transportSenderWorkTail = delivery.getTransportWorkPrev();
         }
-        if(_transportWorkTail == delivery)
+        else if(_transportReceiverWorkTail == delivery)
         {
-            _transportWorkTail = delivery.getTransportWorkPrev();
+            _transportReceiverWorkTail = delivery.getTransportWorkPrev();
         }
     }
 
 
     void addTransportWork(DeliveryImpl delivery)
     {
-        if(_transportWorkTail == null)
+        delivery.setTransportWorkNext(null);
+        if(delivery.getLink() instanceof SenderImpl)
         {
-            delivery.setTransportWorkNext(null);
-            delivery.setTransportWorkPrev(null);
-            _transportWorkHead = _transportWorkTail = delivery;
+            // kept in descending priority order, first come first served within a priority
+            DeliveryImpl previous = _transportSenderWorkTail;
+            while(previous != null && previous.getPriority() < delivery.getPriority())
+            {
+                previous = previous.getTransportWorkPrev();
+            }
+            DeliveryImpl next = previous == null ? _transportSenderWorkHead : previous.getTransportWorkNext();
+            delivery.setTransportWorkPrev(previous);
+            delivery.setTransportWorkNext(next);
+            if(previous == null)
+            {
+                _transportSenderWorkHead = delivery;
+            }
+            else
+            {
+                previous.setTransportWorkNext(delivery);
+            }
+            if(next == null)
+            {
+                _transportSenderWorkTail = delivery;
+            }
+            else
+            {
+                next.setTransportWorkPrev(delivery);
+            }
         }
         else
         {
-            _transportWorkTail.setTransportWorkNext(delivery);
-            delivery.setTransportWorkPrev(_transportWorkTail);
-            _transportWorkTail = delivery;
-            delivery.setTransportWorkNext(null);
+            if(_transportReceiverWorkTail == null)
+            {
+                delivery.setTransportWorkPrev(null);
+                _transportReceiverWorkHead = _transportReceiverWorkTail = delivery;
+            }
+            else
+            {
+                _transportReceiverWorkTail.setTransportWorkNext(delivery);
+                delivery.setTransportWorkPrev(_transportReceiverWorkTail);
+                _transportReceiverWorkTail = delivery;
+            }
         }
     }
 
@@ -20,7 +20,16 @@
  */
 package org.apache.qpid.proton.engine.impl;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
 import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.TransportException;
+import org.apache.qpid.proton.type.Binary;
+import org.apache.qpid.proton.type.UnsignedInteger;
 import org.apache.qpid.proton.type.transport.DeliveryState;
 
 public class DeliveryImpl implements Delivery
@@ -36,7 +45,11 @@ public class DeliveryImpl implements Delivery
 
     private Object _context;
 
-    private final byte[] _tag;
+    private static final long MAX_MAPPED_REGION = Integer.getInteger("pn.max_mapped_region", 64 * 1024 * 1024);
+
+    private Binary _tag;
+    private byte[] _tagBytes;
+    private long _numericTag = -1L;
     private final LinkImpl _link;
     private DeliveryState _deliveryState;
     private boolean _settled;
@@ -50,30 +63,167 @@ public class DeliveryImpl implements Delivery
     private int _flags = (byte) 0;
     private int _transportFlags = (byte) 0;
     private TransportDelivery _transportDelivery;
+    private TransportDelivery _recycledTransportDelivery;
     private byte[] _data;
     private int _dataSize;
+    private ArrayDeque<Binary> _incoming;
+    private DeliverySpill _spill;
+    private ReadableByteChannel _source;
+    private ByteBuffer _sourceBuffer;
+    private boolean _sourceExhausted;
+    private boolean _sourceMapped;
+    private long _sourcePosition;
+    private long _sourceRemaining;
     private boolean _complete;
     private boolean _updated;
     private boolean _done;
     private int _offset;
+    private boolean _freed;
+    private boolean _presettled;
+    private int _priority;
 
     public DeliveryImpl(final byte[] tag, final LinkImpl link, DeliveryImpl previous)
     {
-        _tag = tag;
+        this(new Binary(tag), link, previous);
+    }
+
+    DeliveryImpl(final Binary tag, final LinkImpl link, DeliveryImpl previous)
+    {
         _link = link;
-        _link.incrementUnsettled();
+        init(tag, previous);
+    }
+
+    private void init(final Binary tag, DeliveryImpl previous)
+    {
+        _tag = tag;
+        _tagBytes = null;
+        _numericTag = -1L;
+        _presettled = _link instanceof SenderImpl && ((SenderImpl) _link).isPresettled();
+        _priority = _link instanceof SenderImpl ? ((SenderImpl) _link).getPriority() : SenderImpl.DEFAULT_PRIORITY;
+        if(_presettled)
+        {
+            _settled = true;
+        }
+        else
+        {
+            _link.incrementUnsettled();
+        }
         _linkPrevious = previous;
+        _linkNext = null;
         if(previous != null)
         {
             previous._linkNext = this;
         }
     }
 
+    /**
+     * Re-initialises a delivery taken from its link's recycled pool.
+     */
+    void recycle(final Binary tag, DeliveryImpl previous)
+    {
+        _workNext = _workPrev = null;
+        _transportWorkNext = _transportWorkPrev = null;
+        _context = null;
+        _deliveryState = null;
+        _settled = false;
+        _remoteSettled = false;
+        _remoteDeliveryState = null;
+        _flags = 0;
+        _transportFlags = 0;
+        _recycledTransportDelivery = _transportDelivery;
+        _transportDelivery = null;
+        _data = null;
+        _dataSize = 0;
+        if(_incoming != null)
+        {
+            _incoming.clear();
+        }
+        _spill = null;
+        _source = null;
+        _sourceBuffer = null;
+        _sourceExhausted = false;
+        _sourceMapped = false;
+        _complete = false;
+        _updated = false;
+        _done = false;
+        _offset = 0;
+        _freed = false;
+        init(tag, previous);
+    }
+
     public byte[] getTag()
+    {
+        if(_tagBytes == null)
+        {
+            if(_tag == null)
+            {
+                _tagBytes = new byte[numericTagLength(_numericTag)];
+                writeNumericTag(_numericTag, _tagBytes);
+            }
+            else if(_tag.getArrayOffset() == 0 && _tag.getLength() == _tag.getArray().length)
+            {
+                _tagBytes = _tag.getArray();
+            }
+            else
+            {
+                _tagBytes = new byte[_tag.getLength()];
+                System.arraycopy(_tag.getArray(), _tag.getArrayOffset(), _tagBytes, 0, _tag.getLength());
+            }
+        }
+        return _tagBytes;
+    }
+
+    /**
+     * @return the tag as supplied to, or received by, the link; null if the tag is numeric
+     */
+    Binary getTagBinary()
     {
         return _tag;
     }
 
+    boolean hasNumericTag()
+    {
+        return _tag == null;
+    }
+
+    long getNumericTag()
+    {
+        return _numericTag;
+    }
+
+    void setNumericTag(long numericTag)
+    {
+        _tag = null;
+        _tagBytes = null;
+        _numericTag = numericTag;
+    }
+
+    static int numericTagLength(long tag)
+    {
+        int length = 1;
+        while((tag >>>= 8) != 0)
+        {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the tag big-endian in the fewest bytes that can hold it.
+     *
+     * @return the number of bytes written
+     */
+    static int writeNumericTag(long tag, byte[] dest)
+    {
+        final int length = numericTagLength(tag);
+        for(int i = length - 1; i >= 0; i--)
+        {
+            dest[i] = (byte) tag;
+            tag >>>= 8;
+        }
+        return length;
+    }
+
     public LinkImpl getLink()
     {
         return _link;
@@ -102,14 +252,20 @@ public class DeliveryImpl implements Delivery
     public void disposition(final DeliveryState state)
     {
         _deliveryState = state;
-        setTransportFlag(DELIVERY_STATE_CHANGED);
+        if(!_presettled)
+        {
+            setTransportFlag(DELIVERY_STATE_CHANGED);
+        }
     }
 
     public void settle()
     {
-        _settled = true;
-        _link.decrementUnsettled();
-        setTransportFlag(DELIVERY_STATE_CHANGED);
+        if(!_presettled)
+        {
+            _settled = true;
+            _link.decrementUnsettled();
+            setTransportFlag(DELIVERY_STATE_CHANGED);
+        }
         if(_link.current() == this)
         {
             _link.advance();
@@ -132,6 +288,38 @@ public class DeliveryImpl implements Delivery
         {
             _linkNext._linkPrevious = _linkPrevious;
         }
+        clearWork();
+        if(_spill != null)
+        {
+            _spill.close();
+            _spill = null;
+        }
+        else if(_incoming != null && _dataSize != 0)
+        {
+            // unread data is discarded, and its frames no longer occupy the session window
+            releaseIncoming(_incoming.size());
+            _incoming.clear();
+            getLink().getConnectionImpl().incomingBytesChanged(-_dataSize);
+        }
+        _dataSize = 0;
+        _offset = 0;
+        _freed = true;
+        if(isRecyclable())
+        {
+            _link.recycle(this);
+        }
+    }
+
+    private boolean isRecyclable()
+    {
+        // the settlement must have been processed by the transport, which then holds no further reference
+        return _settled
+               && (_transportDelivery == null || _transportDelivery.isSettled())
+               && (_link instanceof SenderImpl ? _done : _complete)
+               && _link.current() != this
+               && _transportWorkNext == null
+               && _transportWorkPrev == null
+               && !_link.getConnectionImpl().isTransportWorkHead(this);
     }
 
     DeliveryImpl getLinkPrevious()
@@ -139,6 +327,12 @@ public class DeliveryImpl implements Delivery
         return _linkPrevious;
     }
 
+    void recycledNext(DeliveryImpl next)
+    {
+        _linkPrevious = null;
+        _linkNext = next;
+    }
+
     public DeliveryImpl getWorkNext()
     {
         return _workNext;
@@ -162,26 +356,202 @@ public class DeliveryImpl implements Delivery
 
     int recv(byte[] bytes, int offset, int size)
     {
+        final int consumed = read(ByteBuffer.wrap(bytes, offset, size));
+        return (_complete && consumed == 0) ? TransportImpl.END_OF_STREAM : consumed;  //TODO - Implement
+    }
 
-        final int consumed;
-        if(_data != null)
+    private int read(ByteBuffer dst)
+    {
+        int consumed = 0;
+        int heapBytes = 0;
+        int released = 0;
+        if(_spill != null)
         {
-            //TODO - should only be if no bytes left
-            consumed = Math.min(size, _dataSize);
-
-            System.arraycopy(_data, _offset, bytes, offset, consumed);
-            _offset += consumed;
+            consumed = _spill.read(dst);
             _dataSize -= consumed;
         }
-        else
+        while(dst.hasRemaining() && _dataSize != 0)
+        {
+            final Binary chunk = _incoming.peek();
+            final int length = Math.min(dst.remaining(), chunk.getLength() - _offset);
+
+            dst.put(chunk.getArray(), chunk.getArrayOffset() + _offset, length);
+            consumed += length;
+            heapBytes += length;
+            _dataSize -= length;
+            _offset += length;
+            if(_offset == chunk.getLength())
+            {
+                _incoming.poll();
+                _offset = 0;
+                released++;
+            }
+        }
+        if(released != 0)
+        {
+            releaseIncoming(released);
+        }
+        if(heapBytes != 0)
         {
-            _dataSize =  consumed = 0;
+            getLink().getConnectionImpl().incomingBytesChanged(-heapBytes);
         }
         if(_dataSize == 0)
         {
             clearFlag(IO_WORK);
+            closeSpillIfRead();
+        }
+        return consumed;
+    }
+
+    /**
+     * @return a channel over the data of this incoming delivery, which yields what has arrived
+     *         so far and reaches end of stream once the delivery is complete and fully read
+     */
+    ReadableByteChannel channel()
+    {
+        return new ReadableByteChannel()
+        {
+            private boolean _open = true;
+
+            public int read(ByteBuffer dst) throws IOException
+            {
+                if(!_open)
+                {
+                    throw new ClosedChannelException();
+                }
+                final int consumed = DeliveryImpl.this.read(dst);
+                return (_complete && consumed == 0 && _dataSize == 0) ? -1 : consumed;
+            }
+
+            public boolean isOpen()
+            {
+                return _open;
+            }
+
+            public void close()
+            {
+                _open = false;
+            }
+        };
+    }
+
+    ByteBuffer[] recvChunks()
+    {
+        if(_dataSize == 0)
+        {
+            return _complete ? null : new ByteBuffer[0];
+        }
+        if(_spill != null)
+        {
+            _dataSize = 0;
+            clearFlag(IO_WORK);
+            ByteBuffer[] chunks = _spill.readAll();
+            closeSpillIfRead();
+            return chunks;
+        }
+        ByteBuffer[] chunks = new ByteBuffer[_incoming.size()];
+        int i = 0;
+        Binary chunk;
+        while((chunk = _incoming.poll()) != null)
+        {
+            chunks[i++] = ByteBuffer.wrap(chunk.getArray(),
+                                          chunk.getArrayOffset() + _offset,
+                                          chunk.getLength() - _offset).asReadOnlyBuffer();
+            _offset = 0;
+        }
+        getLink().getConnectionImpl().incomingBytesChanged(-_dataSize);
+        _dataSize = 0;
+        releaseIncoming(chunks.length);
+        clearFlag(IO_WORK);
+        return chunks;
+    }
+
+    /**
+     * Queues a frame's payload as further data for an incoming delivery. The payload is
+     * retained, not copied, so it must not be modified afterwards.
+     */
+    void addIncoming(Binary payload)
+    {
+        if(payload.getLength() != 0)
+        {
+            if(_spill != null)
+            {
+                _spill.write(payload.getArray(), payload.getArrayOffset(), payload.getLength());
+                _dataSize += payload.getLength();
+                releaseIncoming(1);
+                return;
+            }
+            if(_incoming == null)
+            {
+                _incoming = new ArrayDeque<Binary>();
+            }
+            _incoming.add(payload);
+            _dataSize += payload.getLength();
+            getLink().getConnectionImpl().incomingBytesChanged(payload.getLength());
+            final int spillThreshold = getLink().getConnectionImpl().getSpillThreshold();
+            if(spillThreshold > 0 && _dataSize > spillThreshold)
+            {
+                spill();
+            }
+        }
+    }
+
+    /**
+     * Moves the buffered data to a spill file, which then receives all further data for the
+     * delivery. Spilled frames no longer occupy the heap, so their session window is returned.
+     */
+    private void spill()
+    {
+        _spill = new DeliverySpill();
+        getLink().getConnectionImpl().incomingBytesChanged(-_dataSize);
+        final int frames = _incoming.size();
+        Binary chunk;
+        while((chunk = _incoming.poll()) != null)
+        {
+            _spill.write(chunk.getArray(), chunk.getArrayOffset() + _offset, chunk.getLength() - _offset);
+            _offset = 0;
+        }
+        releaseIncoming(frames);
+    }
+
+    /**
+     * Closes the spill file once the delivery is complete and all of its data has been read.
+     */
+    private void closeSpillIfRead()
+    {
+        if(_spill != null && _complete && _dataSize == 0)
+        {
+            _spill.close();
+            _spill = null;
+        }
+    }
+
+    /**
+     * Discards the spilled data of this delivery, or only if the delivery is still incomplete.
+     */
+    void releaseSpill(boolean incompleteOnly)
+    {
+        if(_spill != null && (!incompleteOnly || !_complete))
+        {
+            _spill.close();
+            _spill = null;
+            _dataSize = 0;
+            clearFlag(IO_WORK);
+        }
+    }
+
+    DeliverySpill getSpill()
+    {
+        return _spill;
+    }
+
+    private void releaseIncoming(int frames)
+    {
+        TransportSession transportSession = getLink().getSession().getTransportSession();
+        if(transportSession != null)
+        {
+            transportSession.incomingConsumed(frames);
         }
-        return (_complete && consumed == 0) ? TransportImpl.END_OF_STREAM : consumed;  //TODO - Implement
     }
 
     private void clearFlag(int ioWork)
@@ -249,6 +619,29 @@ public class DeliveryImpl implements Delivery
     }
 
     DeliveryImpl clearTransportWork()
+    {
+        DeliveryImpl next = unlinkTransportWork();
+        if(_freed && isRecyclable())
+        {
+            _link.recycle(this);
+        }
+        return next;
+    }
+
+    /**
+     * Takes the delivery off the transport work list, if it is on it, as its link has been unbound from the transport.
+     */
+    void dropTransportWork()
+    {
+        if(_transportWorkNext != null
+           || _transportWorkPrev != null
+           || getLink().getConnectionImpl().isTransportWorkHead(this))
+        {
+            clearTransportWork();
+        }
+    }
+
+    private DeliveryImpl unlinkTransportWork()
     {
         DeliveryImpl next = _transportWorkNext;
         getLink().getConnectionImpl().removeTransportWork(this);
@@ -266,11 +659,31 @@ public class DeliveryImpl implements Delivery
         return next;
     }
 
+    public int getPriority()
+    {
+        return _priority;
+    }
+
+    public void setPriority(int priority)
+    {
+        if(priority != _priority)
+        {
+            _priority = priority;
+            if(_transportWorkNext != null
+               || _transportWorkPrev != null
+               || getLink().getConnectionImpl().isTransportWorkHead(this))
+            {
+                unlinkTransportWork();
+                getLink().getConnectionImpl().addTransportWork(this);
+            }
+        }
+    }
+
     void addToTransportWorkList()
     {
         if(_transportWorkNext == null
            && _transportWorkPrev == null
-           && getLink().getConnectionImpl().getTransportWorkHead() != this)
+           && !getLink().getConnectionImpl().isTransportWorkHead(this))
         {
             getLink().getConnectionImpl().addTransportWork(this);
         }
@@ -323,21 +736,43 @@ public class DeliveryImpl implements Delivery
         _transportDelivery = transportDelivery;
     }
 
+    TransportDelivery bindTransportDelivery(UnsignedInteger deliveryId, TransportLink transportLink)
+    {
+        TransportDelivery transportDelivery = _transportDelivery == null ? _recycledTransportDelivery : _transportDelivery;
+        if(transportDelivery == null)
+        {
+            transportDelivery = new TransportDelivery(deliveryId, this, transportLink);
+        }
+        else
+        {
+            transportDelivery.init(deliveryId, this, transportLink);
+        }
+        _recycledTransportDelivery = null;
+        _transportDelivery = transportDelivery;
+        return transportDelivery;
+    }
+
     public boolean isSettled()
     {
         return _settled;
     }
 
+    boolean isPresettled()
+    {
+        return _presettled;
+    }
+
     int send(byte[] bytes, int offset, int length)
     {
         if(_data == null)
         {
             _data = new byte[length];
+            _offset = 0;
         }
-        else if(_data.length - _dataSize < length)
+        else if(_data.length - _offset - _dataSize < length)
         {
             byte[] oldData = _data;
-            _data = new byte[oldData.length + _dataSize];
+            _data = new byte[Math.max(oldData.length * 2, _dataSize + length)];
             System.arraycopy(oldData,_offset,_data,0,_dataSize);
             _offset = 0;
         }
@@ -347,6 +782,115 @@ public class DeliveryImpl implements Delivery
         return length;  //TODO - Implement.
     }
 
+    void setSource(ReadableByteChannel source)
+    {
+        _source = source;
+        _sourceExhausted = false;
+        _sourceMapped = false;
+        addToTransportWorkList();
+    }
+
+    void setSource(FileChannel file, long position, long count)
+    {
+        _source = file;
+        _sourceBuffer = null;
+        _sourceExhausted = false;
+        _sourceMapped = true;
+        _sourcePosition = position;
+        _sourceRemaining = count;
+        addToTransportWorkList();
+    }
+
+    boolean hasSource()
+    {
+        return _source != null;
+    }
+
+    /**
+     * @return true if the source may still yield data beyond what has already been read from it
+     */
+    boolean isSourcePending()
+    {
+        return _source != null && !_sourceExhausted;
+    }
+
+    /**
+     * Reads from the source as much as fits in a buffer of the given capacity, which is kept
+     * between frames so that at most one frame's worth of data is held for the delivery.
+     *
+     * @return the unsent data read so far, which is empty once the source is exhausted, or null
+     *         if the source has nothing available yet
+     */
+    ByteBuffer readSource(int capacity)
+    {
+        if(_sourceMapped)
+        {
+            return mapSource();
+        }
+        if(_sourceBuffer == null || _sourceBuffer.capacity() < capacity)
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            if(_sourceBuffer != null)
+            {
+                buffer.put(_sourceBuffer);
+                buffer.flip();
+            }
+            else
+            {
+                buffer.limit(0);
+            }
+            _sourceBuffer = buffer;
+        }
+        if(!_sourceExhausted)
+        {
+            _sourceBuffer.compact();
+            try
+            {
+                int read;
+                while(_sourceBuffer.hasRemaining() && (read = _source.read(_sourceBuffer)) != 0)
+                {
+                    if(read < 0)
+                    {
+                        _sourceExhausted = true;
+                        break;
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new TransportException("Unable to read delivery data", e);
+            }
+            finally
+            {
+                _sourceBuffer.flip();
+            }
+        }
+        return _sourceBuffer.hasRemaining() || _sourceExhausted ? _sourceBuffer : null;
+    }
+
+    /**
+     * Maps the next region of a file source, which is then framed directly from the mapping.
+     */
+    private ByteBuffer mapSource()
+    {
+        if((_sourceBuffer == null || !_sourceBuffer.hasRemaining()) && !_sourceExhausted)
+        {
+            final long size = Math.min(_sourceRemaining, MAX_MAPPED_REGION);
+            try
+            {
+                _sourceBuffer = ((FileChannel) _source).map(FileChannel.MapMode.READ_ONLY, _sourcePosition, size);
+            }
+            catch (IOException e)
+            {
+                throw new TransportException("Unable to map delivery data", e);
+            }
+            _sourcePosition += size;
+            _sourceRemaining -= size;
+            _sourceExhausted = _sourceRemaining == 0;
+        }
+        return _sourceBuffer;
+    }
+
     byte[] getData()
     {
         return _data;
@@ -394,6 +938,7 @@ public class DeliveryImpl implements Delivery
     void setComplete()
     {
         _complete = true;
+        closeSpillIfRead();
     }
 
     void setRemoteDeliveryState(DeliveryState remoteDeliveryState)
@@ -411,6 +956,8 @@ public class DeliveryImpl implements Delivery
     void setDone()
     {
         _done = true;
+        _source = null;
+        _sourceBuffer = null;
     }
 
     boolean isDone()
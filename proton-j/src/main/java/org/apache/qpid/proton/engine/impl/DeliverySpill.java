@@ -0,0 +1,223 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.qpid.proton.engine.TransportException;
+
+/**
+ * Holds the unread data of an incoming delivery in a temporary file, which is written and read
+ * through memory mapped segments.
+ *
+ * The file is deleted once the spill is closed and none of the segments handed out by
+ * {@link #readAll()} is still reachable, or failing that when the JVM exits.
+ */
+class DeliverySpill
+{
+    private static final int SEGMENT_SIZE = Integer.getInteger("pn.spill_segment_size", 1024 * 1024);
+    private static final String SPILL_DIRECTORY = System.getProperty("pn.spill_directory");
+
+    // segments handed to the application, enqueued once it no longer references them
+    private static final ReferenceQueue<ByteBuffer> RELEASED_SEGMENTS = new ReferenceQueue<ByteBuffer>();
+    private static final Set<SegmentReference> HANDED_OUT = new HashSet<SegmentReference>();
+
+    private final File _path;
+    private final RandomAccessFile _file;
+    private final FileChannel _channel;
+    private int _segmentsHandedOut;
+    private boolean _closed;
+
+    private MappedByteBuffer _writeSegment;
+    private MappedByteBuffer _readSegment;
+    private long _readSegmentStart = -1L;
+    private long _readPosition;
+    private long _size;
+
+    DeliverySpill()
+    {
+        try
+        {
+            _path = File.createTempFile("proton-delivery", ".spill",
+                                        SPILL_DIRECTORY == null ? null : new File(SPILL_DIRECTORY));
+            _path.deleteOnExit();
+            _file = new RandomAccessFile(_path, "rw");
+            _channel = _file.getChannel();
+        }
+        catch (IOException e)
+        {
+            throw new TransportException("Unable to create delivery spill file", e);
+        }
+        deleteReleased();
+    }
+
+    long available()
+    {
+        return _size - _readPosition;
+    }
+
+    void write(byte[] bytes, int offset, int length)
+    {
+        while(length != 0)
+        {
+            if(_writeSegment == null || !_writeSegment.hasRemaining())
+            {
+                _writeSegment = map(FileChannel.MapMode.READ_WRITE, _size, SEGMENT_SIZE);
+            }
+            final int size = Math.min(length, _writeSegment.remaining());
+            _writeSegment.put(bytes, offset, size);
+            offset += size;
+            length -= size;
+            _size += size;
+        }
+    }
+
+    int read(ByteBuffer dst)
+    {
+        int consumed = 0;
+        while(dst.hasRemaining() && available() != 0)
+        {
+            final long segmentStart = _readPosition - (_readPosition % SEGMENT_SIZE);
+            if(_readSegmentStart != segmentStart)
+            {
+                _readSegment = map(FileChannel.MapMode.READ_ONLY, segmentStart, SEGMENT_SIZE);
+                _readSegmentStart = segmentStart;
+            }
+            final int position = (int) (_readPosition - segmentStart);
+            final int length = (int) Math.min(dst.remaining(), Math.min(available(), SEGMENT_SIZE - position));
+            ByteBuffer src = _readSegment.duplicate();
+            src.position(position);
+            src.limit(position + length);
+            dst.put(src);
+            _readPosition += length;
+            consumed += length;
+        }
+        return consumed;
+    }
+
+    /**
+     * @return read-only views of all the unread data, which is then considered read
+     */
+    ByteBuffer[] readAll()
+    {
+        final int count = (int) ((_size - 1) / SEGMENT_SIZE - _readPosition / SEGMENT_SIZE + 1);
+        ByteBuffer[] chunks = new ByteBuffer[count];
+        for(int i = 0; i < count; i++)
+        {
+            final long length = Math.min(available(), SEGMENT_SIZE - (_readPosition % SEGMENT_SIZE));
+            chunks[i] = map(FileChannel.MapMode.READ_ONLY, _readPosition, length);
+            _readPosition += length;
+        }
+        synchronized(HANDED_OUT)
+        {
+            for(ByteBuffer chunk : chunks)
+            {
+                HANDED_OUT.add(new SegmentReference(chunk, this));
+            }
+            _segmentsHandedOut += chunks.length;
+        }
+        return chunks;
+    }
+
+    File getFile()
+    {
+        return _path;
+    }
+
+    /**
+     * Closes the file, and deletes it unless the application still holds segments mapped from it.
+     */
+    void close()
+    {
+        _writeSegment = null;
+        _readSegment = null;
+        try
+        {
+            _file.close();
+        }
+        catch (IOException e)
+        {
+            // the file is deleted regardless
+        }
+        synchronized(HANDED_OUT)
+        {
+            _closed = true;
+            if(_segmentsHandedOut == 0)
+            {
+                _path.delete();
+            }
+        }
+        deleteReleased();
+    }
+
+    /**
+     * Deletes the files of closed spills whose handed out segments have all become unreachable.
+     */
+    private static void deleteReleased()
+    {
+        Reference<? extends ByteBuffer> reference;
+        while((reference = RELEASED_SEGMENTS.poll()) != null)
+        {
+            DeliverySpill spill = ((SegmentReference) reference)._spill;
+            synchronized(HANDED_OUT)
+            {
+                HANDED_OUT.remove(reference);
+                if(--spill._segmentsHandedOut == 0 && spill._closed)
+                {
+                    spill._path.delete();
+                }
+            }
+        }
+    }
+
+    private MappedByteBuffer map(FileChannel.MapMode mode, long position, long size)
+    {
+        try
+        {
+            return _channel.map(mode, position, size);
+        }
+        catch (IOException e)
+        {
+            throw new TransportException("Unable to map delivery spill file", e);
+        }
+    }
+
+    private static final class SegmentReference extends PhantomReference<ByteBuffer>
+    {
+        private final DeliverySpill _spill;
+
+        SegmentReference(ByteBuffer segment, DeliverySpill spill)
+        {
+            super(segment, RELEASED_SEGMENTS);
+            _spill = spill;
+        }
+    }
+}
@@ -32,6 +32,7 @@ public abstract class EndpointImpl implements Endpoint
     private EndpointError _localError;
     private EndpointError _remoteError;
     private boolean _modified;
+    private boolean _freed;
     private EndpointImpl _transportNext;
     private EndpointImpl _transportPrev;
     private Object _context;
@@ -141,14 +142,13 @@ public abstract class EndpointImpl implements Endpoint
 
     public void free()
     {
-        if(_transportNext != null)
-        {
-            _transportNext.setTransportPrev(_transportPrev);
-        }
-        if(_transportPrev != null)
-        {
-            _transportPrev.setTransportNext(_transportNext);
-        }
+        _freed = true;
+        clearModified();
+    }
+
+    boolean isFreed()
+    {
+        return _freed;
     }
 
     void setTransportNext(EndpointImpl transportNext)
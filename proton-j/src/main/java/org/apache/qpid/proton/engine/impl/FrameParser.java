@@ -387,7 +387,13 @@ class FrameParser implements TransportInput
 
                         Binary payload;
 
-                        if(in.hasRemaining())
+                        if(in.hasRemaining() && _buffer != null && in.hasArray())
+                        {
+                            // the frame was assembled into its own buffer, so the payload can share it
+                            payload = new Binary(in.array(), in.arrayOffset() + in.position(), in.remaining());
+                            in.position(in.limit());
+                        }
+                        else if(in.hasRemaining())
                         {
                             byte[] payloadBytes = new byte[in.remaining()];
                             in.get(payloadBytes);
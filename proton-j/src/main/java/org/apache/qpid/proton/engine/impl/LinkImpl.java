@@ -23,12 +23,14 @@ package org.apache.qpid.proton.engine.impl;
 import java.util.EnumSet;
 import org.apache.qpid.proton.engine.EndpointState;
 import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.type.Binary;
 import org.apache.qpid.proton.type.UnsignedByte;
 import org.apache.qpid.proton.type.transport.Source;
 import org.apache.qpid.proton.type.transport.Target;
 
 public abstract class LinkImpl extends EndpointImpl implements Link
 {
+    private static final int MAX_RECYCLED_DELIVERIES = 256;
 
     private final SessionImpl _session;
 
@@ -54,6 +56,9 @@ public abstract class LinkImpl extends EndpointImpl implements Link
     private final LinkNode<LinkImpl> _node;
     private boolean _drain;
 
+    private DeliveryImpl _recycled;
+    private int _recycledCount;
+
 
     public LinkImpl(SessionImpl session, String name)
     {
@@ -83,12 +88,27 @@ public abstract class LinkImpl extends EndpointImpl implements Link
 
 
     public DeliveryImpl delivery(byte[] tag, int offset, int length)
+    {
+        return delivery(new Binary(tag, offset, length));
+    }
+
+    DeliveryImpl delivery(Binary tag)
     {
 
         incrementQueued();
         try
         {
-        DeliveryImpl delivery = new DeliveryImpl(tag, this, _tail);
+        DeliveryImpl delivery = _recycled;
+        if(delivery == null)
+        {
+            delivery = new DeliveryImpl(tag, this, _tail);
+        }
+        else
+        {
+            _recycled = delivery.getLinkNext();
+            _recycledCount--;
+            delivery.recycle(tag, _tail);
+        }
         if(_tail == null)
         {
             _head = delivery;
@@ -111,10 +131,27 @@ public abstract class LinkImpl extends EndpointImpl implements Link
     public void free()
     {
         super.free();
+        releaseSpills(false);
         _session.getConnectionImpl().removeLinkEndpoint(_node);
+        TransportLink transportLink = getTransportLink();
+        if(transportLink != null)
+        {
+            transportLink.unbindIfRetired();
+        }
         //TODO.
     }
 
+    /**
+     * Discards the spilled data of this link's deliveries, or only of those still incomplete.
+     */
+    void releaseSpills(boolean incompleteOnly)
+    {
+        for(DeliveryImpl delivery = _head; delivery != null; delivery = delivery.getLinkNext())
+        {
+            delivery.releaseSpill(incompleteOnly);
+        }
+    }
+
     public void remove(DeliveryImpl delivery)
     {
         if(_head == delivery)
@@ -131,6 +168,17 @@ public abstract class LinkImpl extends EndpointImpl implements Link
         }
     }
 
+    void recycle(DeliveryImpl delivery)
+    {
+        if(_recycledCount < MAX_RECYCLED_DELIVERIES && getConnectionImpl().isObjectRecycling())
+        {
+            // the pool is chained through the otherwise unused link pointer
+            delivery.recycledNext(_recycled);
+            _recycled = delivery;
+            _recycledCount++;
+        }
+    }
+
     public DeliveryImpl current()
     {
         return _current;
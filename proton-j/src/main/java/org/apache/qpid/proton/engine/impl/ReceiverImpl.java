@@ -20,6 +20,8 @@
  */
 package org.apache.qpid.proton.engine.impl;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import org.apache.qpid.proton.engine.Delivery;
 import org.apache.qpid.proton.engine.Receiver;
 import org.apache.qpid.proton.engine.Sequence;
@@ -73,6 +75,16 @@ public class ReceiverImpl extends LinkImpl implements Receiver
         return _current.recv(bytes, offset, size);
     }
 
+    public ByteBuffer[] recvChunks()
+    {
+        return _current.recvChunks();
+    }
+
+    public ReadableByteChannel channel()
+    {
+        return _current.channel();
+    }
+
     public Sequence<Delivery> unsettled()
     {
         return null;  //TODO.
@@ -101,6 +101,7 @@ public class SaslClientImpl extends SaslImpl implements SaslClient, SaslFrameBod
             }
         }
         _done = true;
+        _state = _outcome == SaslOutcome.PN_SASL_OK ? SaslState.PN_SASL_PASS : SaslState.PN_SASL_FAIL;
     }
 
     @Override
@@ -109,6 +110,12 @@ public class SaslClientImpl extends SaslImpl implements SaslClient, SaslFrameBod
         return _done;
     }
 
+    @Override
+    public boolean isPipelining()
+    {
+        return _state == SaslState.PN_SASL_STEP && isSingleStep(_chosenMechanism);
+    }
+
     @Override
     protected int process(WritableBuffer buffer)
     {
@@ -88,7 +88,7 @@ class SaslFrameParser
 
         ByteBuffer in = ByteBuffer.wrap(bytes, offset, unconsumed);
 
-        while(in.hasRemaining() && state != State.ERROR && !_sasl.isDone())
+        while(in.hasRemaining() && state != State.ERROR && !_sasl.isDone() && !isAmqpHeader(state, in))
         {
             switch(state)
             {
@@ -266,6 +266,15 @@ class SaslFrameParser
         return _state == State.ERROR ? -1 : length - in.remaining();
     }
 
+    /**
+     * A peer that pipelines its connection setup sends the AMQP header straight after its last SASL
+     * frame; those bytes are left unconsumed for the AMQP layer rather than parsed as a frame size.
+     */
+    private static boolean isAmqpHeader(State state, ByteBuffer in)
+    {
+        return state == State.SIZE_0 && in.get(in.position()) == SaslImpl.HEADER[0];
+    }
+
     private void reset()
     {
         _size = 0;
@@ -51,6 +51,13 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>
                          0
                        };
 
+    // mechanisms whose init frame carries everything the server needs to decide the outcome
+    private static final Symbol[] SINGLE_STEP_MECHANISMS =
+            new Symbol[] { Symbol.valueOf("ANONYMOUS"),
+                           Symbol.valueOf("PLAIN"),
+                           Symbol.valueOf("EXTERNAL")
+                         };
+
     private ByteBuffer _pending;
     private final DecoderImpl _decoder = new DecoderImpl();
     private final EncoderImpl _encoder = new EncoderImpl(_decoder);
@@ -89,6 +96,27 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>
         return _done && (_role==Role.CLIENT || _initReceived);
     }
 
+    /**
+     * @return true if this client has sent an init that needs no challenge, so the AMQP header and
+     *         the frames that follow it can be sent without waiting for the outcome
+     */
+    public boolean isPipelining()
+    {
+        return _role == Role.CLIENT && _state == SaslState.PN_SASL_STEP && isSingleStep(_chosenMechanism);
+    }
+
+    static boolean isSingleStep(Symbol mechanism)
+    {
+        for(Symbol singleStep : SINGLE_STEP_MECHANISMS)
+        {
+            if(singleStep.equals(mechanism))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public final int input(byte[] bytes, int offset, int size)
     {
         if(isDone())
@@ -410,6 +438,7 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>
             }
         }
         _done = true;
+        _state = _outcome == SaslOutcome.PN_SASL_OK ? SaslState.PN_SASL_PASS : SaslState.PN_SASL_FAIL;
     }
     private int processResponse(WritableBuffer buffer)
     {
@@ -477,33 +506,47 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>
             @Override
             public int input(byte[] bytes, int offset, int size)
             {
-                if(_role == null || (_role == Role.CLIENT && !_done) ||(_role == Role.SERVER && (!_initReceived || !_done)))
-                {
-                    return SaslImpl.this.input(bytes, offset, size);
-                }
-                else
+                int consumed = 0;
+                if(isSaslInput())
                 {
-                    return input.input(bytes, offset, size);
+                    consumed = SaslImpl.this.input(bytes, offset, size);
+                    // whatever follows the last SASL frame in the same read belongs to the AMQP layer
+                    if(consumed < 0 || consumed == size || isSaslInput())
+                    {
+                        return consumed;
+                    }
                 }
+                int transportConsumed = input.input(bytes, offset + consumed, size - consumed);
+                return transportConsumed < 0 ? transportConsumed : consumed + transportConsumed;
+            }
+
+            private boolean isSaslInput()
+            {
+                return _role == null || (_role == Role.CLIENT && !_done) ||(_role == Role.SERVER && (!_initReceived || !_done));
             }
 
 
             @Override
             public int output(byte[] bytes, int offset, int size)
             {
+                int written = 0;
                 if(_role == null || (_role == Role.CLIENT && !_done) || (_role == Role.SERVER && !_outputComplete))
                 {
-                    int written = SaslImpl.this.output(bytes, offset, size);
-                    if(_done && !_overflowBuffer.hasRemaining())
+                    written = SaslImpl.this.output(bytes, offset, size);
+                    if(_overflowBuffer.hasRemaining())
+                    {
+                        return written;
+                    }
+                    if(_done)
                     {
                         _outputComplete = true;
                     }
-                    return written;
-                }
-                else
-                {
-                    return output.output(bytes, offset, size);
+                    else if(!isPipelining())
+                    {
+                        return written;
+                    }
                 }
+                return written + output.output(bytes, offset + written, size - written);
             }
         };
     }
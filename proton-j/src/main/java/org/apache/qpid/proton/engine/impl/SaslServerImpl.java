@@ -39,6 +39,7 @@ public class SaslServerImpl extends SaslImpl implements SaslServer, SaslFrameBod
     private String _chosenMechanism;
     private boolean _done;
     private Symbol[] _mechanisms;
+    private boolean _mechanismsSent;
 
     public SaslServerImpl()
     {
@@ -57,10 +58,14 @@ public class SaslServerImpl extends SaslImpl implements SaslServer, SaslFrameBod
 
         if(getState()== SaslState.PN_SASL_IDLE && _mechanisms != null)
         {
-            SaslMechanisms mechanisms = new SaslMechanisms();
+            if(!_mechanismsSent)
+            {
+                SaslMechanisms mechanisms = new SaslMechanisms();
 
-            mechanisms.setSaslServerMechanisms(_mechanisms);
-            written += writeFrame(outputBuffer, mechanisms);
+                mechanisms.setSaslServerMechanisms(_mechanisms);
+                written += writeFrame(outputBuffer, mechanisms);
+                _mechanismsSent = true;
+            }
         }
         else if(getChallengeResponse() != null)
         {
@@ -123,6 +128,7 @@ public class SaslServerImpl extends SaslImpl implements SaslServer, SaslFrameBod
     public void handleInit(SaslInit saslInit, Binary payload, Void context)
     {
         _hostname = saslInit.getHostname();
+        _chosenMechanism = saslInit.getMechanism() == null ? null : saslInit.getMechanism().toString();
         if(saslInit.getInitialResponse() != null)
         {
             setPending(saslInit.getInitialResponse().asByteBuffer());
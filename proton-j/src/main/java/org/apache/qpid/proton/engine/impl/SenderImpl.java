@@ -20,21 +20,47 @@
  */
 package org.apache.qpid.proton.engine.impl;
 
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import org.apache.qpid.proton.engine.Delivery;
 import org.apache.qpid.proton.engine.Sender;
 import org.apache.qpid.proton.engine.Sequence;
+import org.apache.qpid.proton.type.Binary;
+import org.apache.qpid.proton.type.transport.SenderSettleMode;
 
 public class SenderImpl  extends LinkImpl implements Sender
 {
     private int _offered;
     private TransportSender _transportLink;
     private boolean _drained;
+    private long _nextTag;
+    private int _priority = DEFAULT_PRIORITY;
+
+    /** The AMQP default message priority */
+    static final int DEFAULT_PRIORITY = 4;
 
     public SenderImpl(SessionImpl session, String name)
     {
         super(session, name);
     }
 
+    public DeliveryImpl delivery()
+    {
+        DeliveryImpl delivery = delivery((Binary) null);
+        delivery.setNumericTag(_nextTag++);
+        return delivery;
+    }
+
+    public int getPriority()
+    {
+        return _priority;
+    }
+
+    public void setPriority(int priority)
+    {
+        _priority = priority;
+    }
+
     public void offer(final int credits)
     {
         _offered = credits;
@@ -50,6 +76,26 @@ public class SenderImpl  extends LinkImpl implements Sender
         return current.send(bytes, offset, length);
     }
 
+    public void send(final ReadableByteChannel source)
+    {
+        DeliveryImpl current = current();
+        if(current == null || current.getLink() != this)
+        {
+            throw new IllegalArgumentException();//TODO.
+        }
+        current.setSource(source);
+    }
+
+    public void send(final FileChannel file, long position, long count)
+    {
+        DeliveryImpl current = current();
+        if(current == null || current.getLink() != this)
+        {
+            throw new IllegalArgumentException();//TODO.
+        }
+        current.setSource(file, position, count);
+    }
+
     public void abort()
     {
         //TODO.
@@ -87,6 +133,15 @@ public class SenderImpl  extends LinkImpl implements Sender
         return advance;
     }
 
+    /**
+     * @return true if the link's sender settle mode is SETTLED, in which case every delivery
+     *         is settled on creation and is never tracked as unsettled
+     */
+    boolean isPresettled()
+    {
+        return SenderSettleMode.SETTLED.equals(getSenderSettleMode());
+    }
+
     boolean hasOfferedCredits()
     {
         return _offered > 0;
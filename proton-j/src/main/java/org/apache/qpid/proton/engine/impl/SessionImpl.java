@@ -113,6 +113,10 @@ public class SessionImpl extends EndpointImpl implements Session
             receiver.free();
         }
         _receivers.clear();
+        if(_transportSession != null)
+        {
+            _transportSession.unbindIfRetired();
+        }
     }
 
     TransportSession getTransportSession()
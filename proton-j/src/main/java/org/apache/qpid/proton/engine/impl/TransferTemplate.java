@@ -0,0 +1,159 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl;
+
+import org.apache.qpid.proton.codec.EncodingCodes;
+import org.apache.qpid.proton.codec.WritableBuffer;
+import org.apache.qpid.proton.type.Binary;
+import org.apache.qpid.proton.type.UnsignedInteger;
+
+/**
+ * Writes the Transfer performatives of a sender link without building a Transfer to encode.
+ *
+ * The descriptor, handle and message-format encodings are fixed for the link, so only the
+ * delivery-id, delivery-tag, settled, more and batchable fields are encoded per frame. The bytes
+ * written are those the encoder would produce for the equivalent Transfer.
+ */
+class TransferTemplate
+{
+    private static final byte[] DESCRIPTOR = { EncodingCodes.DESCRIBED_TYPE_INDICATOR, EncodingCodes.SMALLULONG, 0x14 };
+    private static final int SETTLED_INDEX = 4;
+    private static final int MORE_INDEX = 5;
+    private static final int BATCHABLE_INDEX = 10;
+
+    private final UnsignedInteger _handle;
+    private final byte[] _encodedHandle;
+
+    TransferTemplate(UnsignedInteger handle)
+    {
+        _handle = handle;
+        final long value = handle.longValue();
+        _encodedHandle = new byte[uintSize(value)];
+        _encodedHandle[0] = value == 0L ? EncodingCodes.UINT0 : value <= 255L ? EncodingCodes.SMALLUINT : EncodingCodes.UINT;
+        for(int i = 1; i < _encodedHandle.length; i++)
+        {
+            _encodedHandle[i] = (byte) (value >>> (8 * (_encodedHandle.length - 1 - i)));
+        }
+    }
+
+    boolean isFor(UnsignedInteger handle)
+    {
+        return _handle.equals(handle);
+    }
+
+    void write(WritableBuffer buffer, UnsignedInteger deliveryId, DeliveryImpl delivery,
+               boolean settled, boolean more, boolean batchable)
+    {
+        final long id = deliveryId.longValue();
+        final Binary tag = delivery.hasNumericTag() ? null : delivery.getTagBinary();
+        final int tagLength = tag == null ? DeliveryImpl.numericTagLength(delivery.getNumericTag()) : tag.getLength();
+        final int count = batchable ? BATCHABLE_INDEX + 1
+                          : more ? MORE_INDEX + 1
+                          : settled ? SETTLED_INDEX + 1
+                          : SETTLED_INDEX;
+
+        // handle, delivery-id, delivery-tag, message-format (always zero) and the trailing booleans
+        final int size = _encodedHandle.length + uintSize(id) + (tagLength <= 255 ? 2 : 5) + tagLength + 1 + (count - SETTLED_INDEX);
+
+        buffer.put(DESCRIPTOR, 0, DESCRIPTOR.length);
+        if(size < 254)
+        {
+            buffer.put(EncodingCodes.LIST8);
+            buffer.put((byte) (size + 1));
+            buffer.put((byte) count);
+        }
+        else
+        {
+            buffer.put(EncodingCodes.LIST32);
+            buffer.putInt(size + 4);
+            buffer.putInt(count);
+        }
+
+        buffer.put(_encodedHandle, 0, _encodedHandle.length);
+        writeUint(buffer, id);
+
+        if(tagLength <= 255)
+        {
+            buffer.put(EncodingCodes.VBIN8);
+            buffer.put((byte) tagLength);
+        }
+        else
+        {
+            buffer.put(EncodingCodes.VBIN32);
+            buffer.putInt(tagLength);
+        }
+        if(tag == null)
+        {
+            final long numericTag = delivery.getNumericTag();
+            for(int i = tagLength - 1; i >= 0; i--)
+            {
+                buffer.put((byte) (numericTag >>> (8 * i)));
+            }
+        }
+        else
+        {
+            buffer.put(tag.getArray(), tag.getArrayOffset(), tagLength);
+        }
+
+        buffer.put(EncodingCodes.UINT0);
+        if(count > SETTLED_INDEX)
+        {
+            buffer.put(settled ? EncodingCodes.BOOLEAN_TRUE : EncodingCodes.NULL);
+        }
+        if(count > MORE_INDEX)
+        {
+            buffer.put(more ? EncodingCodes.BOOLEAN_TRUE : EncodingCodes.BOOLEAN_FALSE);
+        }
+        if(batchable)
+        {
+            // null rcv-settle-mode and state, resume and aborted false
+            buffer.put(EncodingCodes.NULL);
+            buffer.put(EncodingCodes.NULL);
+            buffer.put(EncodingCodes.BOOLEAN_FALSE);
+            buffer.put(EncodingCodes.BOOLEAN_FALSE);
+            buffer.put(EncodingCodes.BOOLEAN_TRUE);
+        }
+    }
+
+    private static int uintSize(long value)
+    {
+        return value == 0L ? 1 : value <= 255L ? 2 : 5;
+    }
+
+    private static void writeUint(WritableBuffer buffer, long value)
+    {
+        if(value == 0L)
+        {
+            buffer.put(EncodingCodes.UINT0);
+        }
+        else if(value <= 255L)
+        {
+            buffer.put(EncodingCodes.SMALLUINT);
+            buffer.put((byte) value);
+        }
+        else
+        {
+            buffer.put(EncodingCodes.UINT);
+            buffer.putInt((int) value);
+        }
+    }
+}
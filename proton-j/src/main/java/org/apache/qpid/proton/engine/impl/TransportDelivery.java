@@ -29,12 +29,20 @@ public class TransportDelivery
     private DeliveryImpl _delivery;
     private TransportLink _transportLink;
     private int _sessionSize = 1;
+    private boolean _settled;
 
     public TransportDelivery(UnsignedInteger currentDeliveryId, DeliveryImpl delivery, TransportLink transportLink)
+    {
+        init(currentDeliveryId, delivery, transportLink);
+    }
+
+    void init(UnsignedInteger currentDeliveryId, DeliveryImpl delivery, TransportLink transportLink)
     {
         _deliveryId = currentDeliveryId;
         _delivery = delivery;
         _transportLink = transportLink;
+        _sessionSize = 1;
+        _settled = false;
     }
 
     public UnsignedInteger getDeliveryId()
@@ -57,8 +65,14 @@ public class TransportDelivery
         return _sessionSize;
     }
 
+    boolean isSettled()
+    {
+        return _settled;
+    }
+
     void settled()
     {
+        _settled = true;
         _transportLink.settled(this);
         _delivery.clearWork();
     }
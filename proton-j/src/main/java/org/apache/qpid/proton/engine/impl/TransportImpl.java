@@ -18,8 +18,6 @@
 package org.apache.qpid.proton.engine.impl;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 import org.apache.qpid.proton.codec.CompositeWritableBuffer;
 import org.apache.qpid.proton.codec.DecoderImpl;
 import org.apache.qpid.proton.codec.EncoderImpl;
@@ -54,6 +52,7 @@ import org.apache.qpid.proton.type.transport.Transfer;
 public class TransportImpl extends EndpointImpl implements Transport, FrameBody.FrameBodyHandler<Integer>,FrameTransport
 {
     public static final int SESSION_WINDOW = 1024;
+    private static final int MAX_BUFFERED_INPUT = Integer.getInteger("pn.max_buffered_input", 0);
 
     public static final byte[] HEADER = new byte[8];
     public static final org.apache.qpid.proton.type.messaging.Accepted ACCEPTED =
@@ -83,10 +82,6 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
     private TransportInput _inputProcessor;
     private TransportOutput _outputProcessor;
 
-    private Map<SessionImpl, TransportSession> _transportSessionState = new HashMap<SessionImpl, TransportSession>();
-    private Map<LinkImpl, TransportLink> _transportLinkState = new HashMap<LinkImpl, TransportLink>();
-
-
     private DecoderImpl _decoder = new DecoderImpl();
     private EncoderImpl _encoder = new EncoderImpl(_decoder);
 
@@ -94,11 +89,17 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
 
     private final ByteBuffer _overflowBuffer = ByteBuffer.wrap(new byte[_maxFrameSize]);
     private static final byte AMQP_FRAME_TYPE = 0;
+    private static final int CONTROL_FRAME_SHARE = 8;
     private boolean _closeReceived;
     private Open _open;
     private SaslImpl _sasl;
     private TransportException _inputException;
     private ProtocolTracer _protocolTracer = null;
+    private boolean _batchable;
+    private int _maxBufferedInput = MAX_BUFFERED_INPUT;
+
+    private final Disposition _recycledDisposition = new Disposition();
+    private final Flow _recycledFlow = new Flow();
 
     {
         AMQPDefinedTypes.registerAllTypes(_decoder);
@@ -204,22 +205,30 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
 
             written += processHeader(outputBuffer);
             written += processOpen(outputBuffer);
-            written += processBegin(outputBuffer);
-            written += processAttach(outputBuffer);
-            written += processReceiverFlow(outputBuffer);
-            written += processReceiverDisposition(outputBuffer);
-            written += processReceiverFlow(outputBuffer);
-            written += processMessageData(outputBuffer);
-            written += processSenderDisposition(outputBuffer);
-            written += processSenderFlow(outputBuffer);
-            written += processDetach(outputBuffer);
-            written += processEnd(outputBuffer);
+            // the endpoint and delivery passes only ever visit entries on the connection's
+            // transport work queues, so skip them entirely when nothing has changed
+            if(_connectionEndpoint != null && _connectionEndpoint.hasTransportWork())
+            {
+                written += processBegin(outputBuffer);
+                written += processAttach(outputBuffer);
+                written += processReceiverFlow(outputBuffer);
+                written += processSessionFlow(outputBuffer);
+                written += processReceiverDisposition(outputBuffer);
+                written += processReceiverFlow(outputBuffer);
+                written += processSessionFlow(outputBuffer);
+                written += processMessageData(outputBuffer);
+                written += processSenderDisposition(outputBuffer);
+                written += processSenderFlow(outputBuffer);
+                written += processDetach(outputBuffer);
+                written += processEnd(outputBuffer);
+            }
             written += processClose(outputBuffer);
             _overflowBuffer.flip();
+            written -= _overflowBuffer.remaining();
         }
 
 
-        return written - _overflowBuffer.remaining();
+        return written;
     }
 
     public Sasl sasl()
@@ -237,12 +246,15 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
 
     private void clearTransportWorkList()
     {
-        DeliveryImpl delivery = _connectionEndpoint.getTransportWorkHead();
+        DeliveryImpl delivery = _connectionEndpoint.getTransportSenderWorkHead();
+        while(delivery != null)
+        {
+            delivery = delivery.clearTransportWork();
+        }
+        delivery = _connectionEndpoint.getTransportReceiverWorkHead();
         while(delivery != null)
         {
-            DeliveryImpl transportWorkNext = delivery.getTransportWorkNext();
-            delivery.clearTransportWork();
-            delivery = transportWorkNext;
+            delivery = delivery.clearTransportWork();
         }
     }
 
@@ -251,7 +263,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+            EndpointImpl endpoint = _connectionEndpoint.getTransportLinkHead();
             while(endpoint != null && buffer.remaining() >= _maxFrameSize)
             {
 
@@ -283,6 +295,8 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
                             int frameBytes = writeFrame(buffer, transportSession.getLocalChannel(), detach, null, null);
                             written += frameBytes;
                             endpoint.clearModified();
+                            transportLink.sentDetach();
+                            transportLink.unbindIfRetired();
                         }
                     }
 
@@ -298,7 +312,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+            EndpointImpl endpoint = _connectionEndpoint.getTransportLinkHead();
             while(endpoint != null && buffer.remaining() >= _maxFrameSize)
             {
 
@@ -314,7 +328,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
                         transportLink.setDeliveryCount(transportLink.getDeliveryCount().add(UnsignedInteger.valueOf(credits)));
                         transportLink.setLinkCredit(UnsignedInteger.ZERO);
 
-                        Flow flow = new Flow();
+                        Flow flow = newFlow();
                         flow.setHandle(transportLink.getLocalHandle());
                         flow.setNextIncomingId(transportSession.getNextIncomingId());
                         flow.setIncomingWindow(transportSession.getIncomingWindowSize());
@@ -341,13 +355,13 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            DeliveryImpl delivery = _connectionEndpoint.getTransportWorkHead();
+            DeliveryImpl delivery = _connectionEndpoint.getTransportSenderWorkHead();
             while(delivery != null && buffer.remaining() >= _maxFrameSize )
             {
                 if((delivery.getLink() instanceof SenderImpl) && delivery.isLocalStateChange() && delivery.getTransportDelivery() != null)
                 {
                     TransportDelivery transportDelivery = delivery.getTransportDelivery();
-                    Disposition disposition = new Disposition();
+                    Disposition disposition = newDisposition();
                     disposition.setFirst(transportDelivery.getDeliveryId());
                     disposition.setLast(transportDelivery.getDeliveryId());
                     disposition.setRole(Role.SENDER);
@@ -378,81 +392,147 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            DeliveryImpl delivery = _connectionEndpoint.getTransportWorkHead();
-
-            while(delivery != null && buffer.remaining() >= _maxFrameSize)
+            // deliveries take turns a frame at a time, so a large message cannot hold up those on other
+            // links, and a share of the buffer is kept for the control frames which follow the data.
+            // The work list is in priority order, and a turn ends early rather than serve a lower
+            // priority than has already been served in it.
+            final int reserve = buffer.remaining() / CONTROL_FRAME_SHARE;
+            boolean progress = false;
+            int turnPriority = 0;
+            DeliveryImpl delivery = _connectionEndpoint.getTransportSenderWorkHead();
+
+            while(buffer.remaining() >= _maxFrameSize && (written == 0 || buffer.remaining() - _maxFrameSize >= reserve))
             {
-                if((delivery.getLink() instanceof SenderImpl) && !(delivery.isDone() && delivery.getDataLength() == 0)
-                   && delivery.getLink().getSession().getTransportSession().hasOutgoingCredit())
+                if(delivery == null || (progress && delivery.getPriority() < turnPriority))
                 {
-                    SenderImpl sender = (SenderImpl) delivery.getLink();
-
-                    sender.decrementQueued();
+                    if(!progress)
+                    {
+                        break;
+                    }
+                    progress = false;
+                    delivery = _connectionEndpoint.getTransportSenderWorkHead();
+                    continue;
+                }
 
+                SenderImpl sender = (SenderImpl) delivery.getLink();
+                TransportSender transportLink = sender.getTransportLink();
+                TransportSession transportSession = sender.getSession().getTransportSession();
+                DeliveryImpl inProgress = transportLink.getOutgoingDelivery();
 
-                    TransportLink transportLink = sender.getTransportLink();
+                // a link sends one delivery at a time, and one it has advanced past still needs its last frame
+                if((inProgress == null || inProgress == delivery)
+                   && (!(delivery.isDone() && delivery.getDataLength() == 0)
+                       || (inProgress == delivery && sender.current() != delivery))
+                   && transportSession.hasOutgoingCredit())
+                {
+                    ByteBuffer payload;
+                    if(delivery.getData() != null)
+                    {
+                        payload = ByteBuffer.wrap(delivery.getData(), delivery.getDataOffset(), delivery.getDataLength());
+                    }
+                    else if(delivery.hasSource())
+                    {
+                        payload = delivery.readSource(_maxFrameSize);
+                        if(payload == null)
+                        {
+                            // nothing to send until the source has more data
+                            delivery = delivery.getTransportWorkNext();
+                            continue;
+                        }
+                    }
+                    else
+                    {
+                        payload = null;
+                    }
 
-                    UnsignedInteger deliveryId = transportLink.getDeliveryCount();
-                    TransportDelivery transportDelivery = new TransportDelivery(deliveryId, delivery, transportLink);
-                    delivery.setTransportDelivery(transportDelivery);
-                    sender.getSession().getTransportSession().addUnsettledOutgoing(deliveryId, delivery);
+                    final UnsignedInteger deliveryId;
+                    if(inProgress == null)
+                    {
+                        sender.decrementQueued();
+                        deliveryId = transportSession.allocateOutgoingDeliveryId();
+                        transportLink.setOutgoingDelivery(delivery, deliveryId);
+                        if(!delivery.isPresettled())
+                        {
+                            delivery.bindTransportDelivery(deliveryId, transportLink);
+                            transportSession.addUnsettledOutgoing(deliveryId, delivery);
+                        }
+                    }
+                    else
+                    {
+                        deliveryId = transportLink.getOutgoingDeliveryId();
+                    }
 
-                    final Transfer transfer = new Transfer();
-                    transfer.setDeliveryId(deliveryId);
-                    transfer.setDeliveryTag(new Binary(delivery.getTag()));
-                    transfer.setHandle(transportLink.getLocalHandle());
+                    final boolean more = sender.current() == delivery || delivery.isSourcePending()
+                                         || (delivery.hasSource() && delivery.getData() != null);
+                    final int channel = transportSession.getLocalChannel();
 
-                    if(delivery.isSettled())
+                    int frameBytes;
+                    if(_protocolTracer == null)
                     {
-                        transfer.setSettled(Boolean.TRUE);
+                        frameBytes = writeTransferFrame(buffer, channel, transportLink.getTransferTemplate(),
+                                                        deliveryId, delivery, more, _batchable, payload);
                     }
-                    if(delivery.getLink().current() == delivery)
+                    else
                     {
-                        transfer.setMore(true);
-                    }
+                        final Transfer transfer = new Transfer();
+                        transfer.setDeliveryId(deliveryId);
+                        transfer.setDeliveryTag(delivery.hasNumericTag() ? new Binary(delivery.getTag()) : delivery.getTagBinary());
+                        transfer.setHandle(transportLink.getLocalHandle());
 
-                    transfer.setMessageFormat(UnsignedInteger.ZERO);
+                        if(delivery.isSettled())
+                        {
+                            transfer.setSettled(Boolean.TRUE);
+                        }
+                        if(more)
+                        {
+                            transfer.setMore(true);
+                        }
 
-                    // TODO - large frames
-                    ByteBuffer payload = delivery.getData() ==  null ? null : ByteBuffer.wrap(delivery.getData(), delivery.getDataOffset(), delivery.getDataLength());
+                        transfer.setMessageFormat(UnsignedInteger.ZERO);
+                        transfer.setBatchable(_batchable);
 
-                    int frameBytes = writeFrame(buffer,
-                                                sender.getSession().getTransportSession().getLocalChannel(),
-                                                transfer, payload, new PartialTransfer(transfer));
-                    sender.getSession().getTransportSession().incrementOutgoingId();
+                        frameBytes = writeFrame(buffer, channel, transfer, payload, new PartialTransfer(transfer));
+                    }
+                    transportSession.incrementOutgoingId();
 
                     written += frameBytes;
+                    if(!progress)
+                    {
+                        progress = true;
+                        turnPriority = delivery.getPriority();
+                    }
 
-                    if(payload == null || !payload.hasRemaining())
+                    if(delivery.getData() != null && !payload.hasRemaining() && delivery.hasSource())
+                    {
+                        // the buffered data is sent, the rest comes from the source
+                        delivery.setData(null);
+                        delivery.setDataOffset(0);
+                        delivery.setDataLength(0);
+                    }
+                    else if(payload == null || (!payload.hasRemaining() && !delivery.isSourcePending()))
                     {
                         delivery.setData(null);
+                        delivery.setDataOffset(0);
                         delivery.setDataLength(0);
                         delivery.setDone();
 
-                        if(delivery.getLink().current() != delivery)
+                        if(sender.current() != delivery)
                         {
                             transportLink.setDeliveryCount(transportLink.getDeliveryCount().add(UnsignedInteger.ONE));
                             transportLink.setLinkCredit(transportLink.getLinkCredit().subtract(UnsignedInteger.ONE));
+                            transportLink.setOutgoingDelivery(null, null);
                         }
 
                         delivery = delivery.clearTransportWork();
-
+                        continue;
                     }
-                    else
+                    else if(delivery.getData() != null)
                     {
                         delivery.setDataOffset(delivery.getDataOffset()+delivery.getDataLength()-payload.remaining());
                         delivery.setDataLength(payload.remaining());
                     }
-
-
-
-
-
-                }
-                else
-                {
-                    delivery = delivery.getTransportWorkNext();
                 }
+                delivery = delivery.getTransportWorkNext();
             }
         }
         return written;
@@ -463,7 +543,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            DeliveryImpl delivery = _connectionEndpoint.getTransportWorkHead();
+            DeliveryImpl delivery = _connectionEndpoint.getTransportReceiverWorkHead();
             while(delivery != null && buffer.remaining() >= _maxFrameSize)
             {
                 boolean remove = false;
@@ -471,17 +551,21 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
                 {
                     remove = true;
                     TransportDelivery transportDelivery = delivery.getTransportDelivery();
-                    Disposition disposition = new Disposition();
-                    disposition.setFirst(transportDelivery.getDeliveryId());
-                    disposition.setLast(transportDelivery.getDeliveryId());
-                    disposition.setRole(Role.RECEIVER);
-                    disposition.setSettled(delivery.isSettled());
-
-                    disposition.setState(delivery.getLocalState());
-                    int frameBytes = writeFrame(buffer, delivery.getLink().getSession()
-                                                                      .getTransportSession().getLocalChannel(),
-                                       disposition, null, null);
-                    written += frameBytes;
+                    // once the sender has settled there is no one to tell
+                    if(!delivery.remotelySettled())
+                    {
+                        Disposition disposition = newDisposition();
+                        disposition.setFirst(transportDelivery.getDeliveryId());
+                        disposition.setLast(transportDelivery.getDeliveryId());
+                        disposition.setRole(Role.RECEIVER);
+                        disposition.setSettled(delivery.isSettled());
+
+                        disposition.setState(delivery.getLocalState());
+                        int frameBytes = writeFrame(buffer, delivery.getLink().getSession()
+                                                                          .getTransportSession().getLocalChannel(),
+                                           disposition, null, null);
+                        written += frameBytes;
+                    }
                     if(delivery.isSettled())
                     {
                         transportDelivery.settled();
@@ -503,7 +587,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+            EndpointImpl endpoint = _connectionEndpoint.getTransportLinkHead();
             while(endpoint != null && buffer.remaining() >= _maxFrameSize)
             {
 
@@ -521,7 +605,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
                         if(credits != 0 || receiver.getDrain())
                         {
                             transportLink.addCredit(credits);
-                            Flow flow = new Flow();
+                            Flow flow = newFlow();
                             flow.setHandle(transportLink.getLocalHandle());
                             flow.setNextIncomingId(transportSession.getNextIncomingId());
                             flow.setIncomingWindow(transportSession.getIncomingWindowSize());
@@ -542,30 +626,36 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
                 }
                 endpoint = endpoint.transportNext();
             }
-            endpoint = _connectionEndpoint.getTransportHead();
+        }
+        return written;
+    }
+
+    private int processSessionFlow(WritableBuffer buffer)
+    {
+        int written = 0;
+        if(_connectionEndpoint != null)
+        {
+            EndpointImpl endpoint = _connectionEndpoint.getTransportSessionHead();
             while(endpoint != null && buffer.remaining() >= _maxFrameSize)
             {
+                SessionImpl session = (SessionImpl) endpoint;
+                TransportSession transportSession = getTransportState(session);
 
-                if(endpoint instanceof SessionImpl)
+                if(session.getLocalState() == EndpointState.ACTIVE && transportSession.beginSent())
                 {
-
-                    SessionImpl session = (SessionImpl) endpoint;
-                    TransportSession transportSession = getTransportState(session);
-
-                    if(session.getLocalState() == EndpointState.ACTIVE)
+                    boolean windowResized = session.clearIncomingWindowResize();
+                    if(windowResized)
                     {
-                        boolean windowResized = session.clearIncomingWindowResize();
-                        if(windowResized)
-                        {
-                            Flow flow = new Flow();
-                            flow.setIncomingWindow(transportSession.getIncomingWindowSize());
-                            flow.setOutgoingWindow(transportSession.getOutgoingWindowSize());
-                            flow.setNextOutgoingId(transportSession.getNextOutgoingId());
-                            flow.setNextIncomingId(transportSession.getNextIncomingId());
-                            int frameBytes = writeFrame(buffer, transportSession.getLocalChannel(), flow, null, null);
-                            written += frameBytes;
-                        }
+                        Flow flow = newFlow();
+                        flow.setIncomingWindow(transportSession.getIncomingWindowSize());
+                        flow.setOutgoingWindow(transportSession.getOutgoingWindowSize());
+                        flow.setNextOutgoingId(transportSession.getNextOutgoingId());
+                        flow.setNextIncomingId(transportSession.getNextIncomingId());
+                        int frameBytes = writeFrame(buffer, transportSession.getLocalChannel(), flow, null, null);
+                        written += frameBytes;
                     }
+                    // nothing more to send for an active session until it is next modified
+                    endpoint.clearModified();
                 }
                 endpoint = endpoint.transportNext();
             }
@@ -578,7 +668,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+            EndpointImpl endpoint = _connectionEndpoint.getTransportLinkHead();
 
             while(endpoint != null && buffer.remaining() >= _maxFrameSize)
             {
@@ -654,7 +744,13 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
 
     private void clearInterestList()
     {
-        EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+        EndpointImpl endpoint = _connectionEndpoint.getTransportSessionHead();
+        while(endpoint != null)
+        {
+            endpoint.clearModified();
+            endpoint = endpoint.transportNext();
+        }
+        endpoint = _connectionEndpoint.getTransportLinkHead();
         while(endpoint != null)
         {
             endpoint.clearModified();
@@ -699,7 +795,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
 
         if(_connectionEndpoint != null)
         {
-            EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+            EndpointImpl endpoint = _connectionEndpoint.getTransportSessionHead();
             while(endpoint != null && buffer.remaining() >= _maxFrameSize)
             {
                 if(endpoint instanceof SessionImpl)
@@ -734,25 +830,60 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         return written;
     }
 
+    private boolean isRecycling()
+    {
+        // a protocol tracer may hold on to the frame bodies it is given
+        return _protocolTracer == null && _connectionEndpoint.isObjectRecycling();
+    }
+
+    private Disposition newDisposition()
+    {
+        if(isRecycling())
+        {
+            Disposition disposition = _recycledDisposition;
+            disposition.setLast(null);
+            disposition.setSettled(false);
+            disposition.setState(null);
+            disposition.setBatchable(false);
+            return disposition;
+        }
+        return new Disposition();
+    }
+
+    private Flow newFlow()
+    {
+        if(isRecycling())
+        {
+            Flow flow = _recycledFlow;
+            flow.setNextIncomingId(null);
+            flow.setHandle(null);
+            flow.setDeliveryCount(null);
+            flow.setLinkCredit(null);
+            flow.setAvailable(null);
+            flow.setDrain(false);
+            flow.setEcho(false);
+            flow.setProperties(null);
+            return flow;
+        }
+        return new Flow();
+    }
+
     private TransportSession getTransportState(SessionImpl session)
     {
-        TransportSession transportSession = _transportSessionState.get(session);
+        TransportSession transportSession = session.getTransportSession();
         if(transportSession == null)
         {
             transportSession = new TransportSession(session);
-            session.setTransportSession(transportSession);
-            _transportSessionState.put(session, transportSession);
         }
         return transportSession;
     }
 
     private TransportLink getTransportState(LinkImpl link)
     {
-        TransportLink transportLink = _transportLinkState.get(link);
+        TransportLink transportLink = link.getTransportLink();
         if(transportLink == null)
         {
             transportLink = TransportLink.createTransportLink(link);
-            _transportLinkState.put(link, transportLink);
         }
         return transportLink;
     }
@@ -784,7 +915,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         int written = 0;
         if(_connectionEndpoint != null)
         {
-            EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+            EndpointImpl endpoint = _connectionEndpoint.getTransportSessionHead();
             while(endpoint != null && buffer.remaining() >= _maxFrameSize)
             {
                 SessionImpl session;
@@ -800,6 +931,8 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
                     int frameBytes = writeFrame(buffer, channel, end, null, null);
                     written += frameBytes;
                     endpoint.clearModified();
+                    transportSession.sentEnd();
+                    transportSession.unbindIfRetired();
                 }
 
                 endpoint = endpoint.transportNext();
@@ -814,7 +947,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
 
         if(!_closeReceived && (session == null || !session.getTransportSession().endReceived()))
         {
-            EndpointImpl endpoint = _connectionEndpoint.getTransportHead();
+            EndpointImpl endpoint = _connectionEndpoint.getTransportLinkHead();
             while(endpoint != null)
             {
                 if(endpoint instanceof SenderImpl)
@@ -887,6 +1020,33 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
             _encoder.writeDescribedType(frameBody);
         }
 
+        return completeFrame(buffer, oldPosition, channel, payload);
+    }
+
+    private int writeTransferFrame(WritableBuffer buffer,
+                                   int channel,
+                                   TransferTemplate template,
+                                   UnsignedInteger deliveryId,
+                                   DeliveryImpl delivery,
+                                   boolean more,
+                                   boolean batchable,
+                                   ByteBuffer payload)
+    {
+        int oldPosition = buffer.position();
+        buffer.position(oldPosition+8);
+        template.write(buffer, deliveryId, delivery, delivery.isSettled(), more, batchable);
+
+        if(!more && payload != null && (payload.remaining() + buffer.position() - oldPosition) > _maxFrameSize)
+        {
+            buffer.position(oldPosition+8);
+            template.write(buffer, deliveryId, delivery, delivery.isSettled(), true, batchable);
+        }
+
+        return completeFrame(buffer, oldPosition, channel, payload);
+    }
+
+    private int completeFrame(WritableBuffer buffer, int oldPosition, int channel, ByteBuffer payload)
+    {
         int payloadSize = Math.min(payload == null ? 0 : payload.remaining(), _maxFrameSize - (buffer.position() - oldPosition));
         if(payloadSize > 0)
         {
@@ -918,6 +1078,11 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
     public void free()
     {
         super.free();
+        if(_connectionEndpoint != null)
+        {
+            // nothing more arrives for incomplete deliveries, so their spill files can go
+            _connectionEndpoint.releaseIncompleteSpills();
+        }
     }
 
     //==================================================================================================================
@@ -1085,6 +1250,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
                 transportLink.receivedDetach();
                 transportSession.freeRemoteHandle(transportLink.getRemoteHandle());
                 link.setRemoteState(EndpointState.CLOSED);
+                transportLink.unbindIfRetired();
 
             }
             else
@@ -1106,6 +1272,7 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
             _remoteSessions[channel] = null;
             transportSession.receivedEnd();
             transportSession.getSession().setRemoteState(EndpointState.CLOSED);
+            transportSession.unbindIfRetired();
 
         }
     }
@@ -1153,6 +1320,25 @@ public class TransportImpl extends EndpointImpl implements Transport, FrameBody.
         }
     }
 
+    public void setBatchable(boolean batchable)
+    {
+        _batchable = batchable;
+    }
+
+    public int capacity()
+    {
+        if(_maxBufferedInput <= 0 || _connectionEndpoint == null)
+        {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(0, _maxBufferedInput - _connectionEndpoint.getIncomingBytes());
+    }
+
+    public void setMaxBufferedInput(int bytes)
+    {
+        _maxBufferedInput = bytes;
+    }
+
     public ProtocolTracer getProtocolTracer() 
     {
         return _protocolTracer;
@@ -36,6 +36,7 @@ class TransportLink<T extends LinkImpl>
     private UnsignedInteger _remoteLinkCredit;
     private boolean _detachReceived;
     private boolean _attachSent;
+    private boolean _detachSent;
 
     protected TransportLink(T link)
     {
@@ -183,4 +184,42 @@ class TransportLink<T extends LinkImpl>
     {
         _remoteDeliveryCount = remoteDeliveryCount;
     }
+
+    public boolean detachSent()
+    {
+        return _detachSent;
+    }
+
+    public void sentDetach()
+    {
+        _detachSent = true;
+    }
+
+    /**
+     * Unbinds from the link once the application has freed it and its handles are retired, by a detach
+     * each way or by the end of its session.
+     */
+    void unbindIfRetired()
+    {
+        if(_link.isFreed()
+           && ((_detachSent && _detachReceived) || _link.getSession().getTransportSession().isRetired()))
+        {
+            unbind();
+        }
+    }
+
+    /**
+     * Drops the transport work of the link's deliveries, which can no longer be sent; subclasses then
+     * clear the link's reference to this state.
+     */
+    void unbind()
+    {
+        DeliveryImpl delivery = _link._head;
+        while(delivery != null)
+        {
+            DeliveryImpl next = delivery.getLinkNext();
+            delivery.dropTransportWork();
+            delivery = next;
+        }
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Transport;
+
+/**
+ * Connects two connections in the same process through their transports, without sockets.
+ *
+ * Each call to {@link #pump()} hands what either transport has written to the other. Optionally
+ * each direction delays its bytes by a fixed latency and carries no more than a given number of
+ * bytes per second, so that tests and benchmarks can model a network deterministically.
+ */
+public class TransportPair
+{
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Transport _client;
+    private final Transport _server;
+    private final Direction _toServer;
+    private final Direction _toClient;
+
+    public TransportPair(Connection client, Connection server)
+    {
+        this(client, server, 0L, 0L);
+    }
+
+    /**
+     * @param latency the nanoseconds that bytes take to reach the other side
+     * @param bandwidth the bytes per second that each direction carries, zero for no limit
+     */
+    public TransportPair(Connection client, Connection server, long latency, long bandwidth)
+    {
+        _client = TransportFactory.getDefaultTransportFactory().transport(client);
+        _server = TransportFactory.getDefaultTransportFactory().transport(server);
+        _toServer = new Direction(_client, _server, latency, bandwidth);
+        _toClient = new Direction(_server, _client, latency, bandwidth);
+    }
+
+    public Transport getClientTransport()
+    {
+        return _client;
+    }
+
+    public Transport getServerTransport()
+    {
+        return _server;
+    }
+
+    /**
+     * Moves the output of each transport towards the other, and delivers what has arrived.
+     *
+     * @return the number of bytes delivered to either side
+     */
+    public int pump()
+    {
+        long now = System.nanoTime();
+        return _toServer.pump(now) + _toClient.pump(now);
+    }
+
+    /**
+     * @return the nanoseconds until bytes still in flight are due, zero if some are due now,
+     *         or -1 if there are none
+     */
+    public long getNextDue()
+    {
+        long now = System.nanoTime();
+        long toServer = _toServer.getNextDue(now);
+        long toClient = _toClient.getNextDue(now);
+        return toServer < 0 || (toClient >= 0 && toClient < toServer) ? toClient : toServer;
+    }
+
+    private static final class Chunk
+    {
+        private final byte[] _bytes = new byte[DEFAULT_BUFFER_SIZE];
+        private int _offset;
+        private int _length;
+        private long _due;
+    }
+
+    private static final class Direction
+    {
+        private final Transport _from;
+        private final Transport _to;
+        private final long _latency;
+        private final long _bandwidth;
+        private final long _fillTime;
+        private final Queue<Chunk> _inFlight = new LinkedList<Chunk>();
+        // delivered chunks are handed back to carry later output
+        private final Queue<Chunk> _spare = new LinkedList<Chunk>();
+        private long _allowance = DEFAULT_BUFFER_SIZE;
+        private long _refilled = System.nanoTime();
+
+        Direction(Transport from, Transport to, long latency, long bandwidth)
+        {
+            _from = from;
+            _to = to;
+            _latency = latency;
+            _bandwidth = bandwidth;
+            _fillTime = bandwidth > 0 ? DEFAULT_BUFFER_SIZE * 1000000000L / bandwidth + 1 : 0L;
+        }
+
+        int pump(long now)
+        {
+            send(now);
+            int delivered = deliver(now);
+            if (delivered > 0)
+            {
+                // delivering may have made the receiver ready to answer, or freed room to send more
+                send(now);
+                delivered += deliver(now);
+            }
+            return delivered;
+        }
+
+        private void send(long now)
+        {
+            if (_bandwidth > 0)
+            {
+                // a bucket of at most one chunk, so an idle direction cannot save up a burst; time
+                // beyond that needed to fill it is not counted, which keeps the product in range
+                long elapsed = Math.min(now - _refilled, _fillTime);
+                _allowance = Math.min(DEFAULT_BUFFER_SIZE, _allowance + elapsed * _bandwidth / 1000000000L);
+                _refilled = now;
+            }
+            while (_bandwidth <= 0 || _allowance > 0)
+            {
+                Chunk chunk = _spare.isEmpty() ? new Chunk() : _spare.poll();
+                int size = _bandwidth > 0 ? (int) Math.min(_allowance, DEFAULT_BUFFER_SIZE) : DEFAULT_BUFFER_SIZE;
+                int written = _from.output(chunk._bytes, 0, size);
+                if (written <= 0)
+                {
+                    _spare.add(chunk);
+                    break;
+                }
+                chunk._offset = 0;
+                chunk._length = written;
+                chunk._due = now + _latency;
+                _inFlight.add(chunk);
+                if (_bandwidth > 0)
+                {
+                    _allowance -= written;
+                }
+                if (written < size)
+                {
+                    break;
+                }
+            }
+        }
+
+        private int deliver(long now)
+        {
+            int delivered = 0;
+            Chunk chunk;
+            while ((chunk = _inFlight.peek()) != null && now - chunk._due >= 0)
+            {
+                // offer no more than the receiver has room for, as a connector stops reading
+                int capacity = _to.capacity();
+                if (capacity <= 0)
+                {
+                    break;
+                }
+                int consumed = _to.input(chunk._bytes, chunk._offset, Math.min(chunk._length, capacity));
+                if (consumed == Transport.END_OF_STREAM)
+                {
+                    consumed = chunk._length;
+                }
+                chunk._offset += consumed;
+                chunk._length -= consumed;
+                delivered += consumed;
+                if (chunk._length > 0)
+                {
+                    // the rest waits for the next pump
+                    break;
+                }
+                _spare.add(_inFlight.poll());
+            }
+            return delivered;
+        }
+
+        long getNextDue(long now)
+        {
+            Chunk chunk = _inFlight.peek();
+            return chunk == null ? -1L : Math.max(0L, chunk._due - now);
+        }
+    }
+}
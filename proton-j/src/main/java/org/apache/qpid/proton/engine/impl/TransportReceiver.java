@@ -25,6 +25,7 @@ import org.apache.qpid.proton.type.transport.Flow;
 
 class TransportReceiver extends TransportLink<ReceiverImpl>
 {
+    private DeliveryImpl _incomingDelivery;
 
 
     TransportReceiver(ReceiverImpl link)
@@ -33,11 +34,31 @@ class TransportReceiver extends TransportLink<ReceiverImpl>
         link.setTransportLink(this);
     }
 
+    @Override
+    void unbind()
+    {
+        super.unbind();
+        getLink().setTransportLink(null);
+    }
+
     public ReceiverImpl getReceiver()
     {
         return getLink();
     }
 
+    /**
+     * @return the delivery whose transfer is still arriving, if any
+     */
+    DeliveryImpl getIncomingDelivery()
+    {
+        return _incomingDelivery;
+    }
+
+    void setIncomingDelivery(DeliveryImpl delivery)
+    {
+        _incomingDelivery = delivery;
+    }
+
     @Override
     void handleFlow(Flow flow)
     {
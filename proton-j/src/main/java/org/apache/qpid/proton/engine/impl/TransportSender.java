@@ -27,6 +27,9 @@ import org.apache.qpid.proton.type.transport.Flow;
 class TransportSender extends TransportLink<SenderImpl>
 {
     private boolean _drain;
+    private TransferTemplate _transferTemplate;
+    private DeliveryImpl _outgoingDelivery;
+    private UnsignedInteger _outgoingDeliveryId;
     private static final UnsignedInteger ORIGINAL_DELIVERY_COUNT = UnsignedInteger.ZERO;
 
     TransportSender(SenderImpl link)
@@ -36,6 +39,41 @@ class TransportSender extends TransportLink<SenderImpl>
         link.setTransportLink(this);
     }
 
+    @Override
+    void unbind()
+    {
+        super.unbind();
+        getLink().setTransportLink(null);
+    }
+
+    /**
+     * @return the delivery whose transfer has been started but not yet completed, if any
+     */
+    DeliveryImpl getOutgoingDelivery()
+    {
+        return _outgoingDelivery;
+    }
+
+    UnsignedInteger getOutgoingDeliveryId()
+    {
+        return _outgoingDeliveryId;
+    }
+
+    void setOutgoingDelivery(DeliveryImpl delivery, UnsignedInteger deliveryId)
+    {
+        _outgoingDelivery = delivery;
+        _outgoingDeliveryId = deliveryId;
+    }
+
+    TransferTemplate getTransferTemplate()
+    {
+        if(_transferTemplate == null || !_transferTemplate.isFor(getLocalHandle()))
+        {
+            _transferTemplate = new TransferTemplate(getLocalHandle());
+        }
+        return _transferTemplate;
+    }
+
     @Override
     void handleFlow(Flow flow)
     {
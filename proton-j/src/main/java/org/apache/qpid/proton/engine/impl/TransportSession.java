@@ -46,7 +46,7 @@ class TransportSession
     private Map<String, TransportLink> _halfOpenLinks = new HashMap<String, TransportLink>();
 
 
-    private UnsignedInteger _currentDeliveryId;
+    private UnsignedInteger _nextOutgoingDeliveryId = UnsignedInteger.ZERO;
     private UnsignedInteger _remoteIncomingWindow;
     private UnsignedInteger _remoteOutgoingWindow;
     private UnsignedInteger _remoteNextIncomingId = _nextOutgoingId;
@@ -57,13 +57,16 @@ class TransportSession
             _unsettledOutgoingDeliveriesById = new HashMap<UnsignedInteger, DeliveryImpl>();
     private int _unsettledIncomingSize;
     private boolean _incomingWindowSizeChange;
+    private int _incomingWindowReleased;
     private boolean _outgoingWindowSizeChange;
     private boolean _endReceived;
+    private boolean _endSent;
     private boolean _beginSent;
 
     public TransportSession(SessionImpl session)
     {
         _session = session;
+        _session.setTransportSession(this);
     }
 
     public SessionImpl getSession()
@@ -209,52 +212,42 @@ class TransportSession
     {
         DeliveryImpl delivery;
         incrementNextIncomingId();
-        if(transfer.getDeliveryId() == null || transfer.getDeliveryId().equals(_currentDeliveryId))
+        // TODO - check link handle valid and a receiver
+        TransportReceiver transportReceiver = (TransportReceiver) getLinkFromRemoteHandle(transfer.getHandle());
+        // transfers on different links may be interleaved, so continuations are matched by link
+        delivery = transportReceiver.getIncomingDelivery();
+        if(delivery != null)
         {
-            TransportReceiver transportReceiver = (TransportReceiver) getLinkFromRemoteHandle(transfer.getHandle());
-            ReceiverImpl receiver = transportReceiver.getReceiver();
-            Binary deliveryTag = transfer.getDeliveryTag();
-            delivery = _unsettledIncomingDeliveriesById.get(_currentDeliveryId);
             delivery.getTransportDelivery().incrementSessionSize();
-
         }
         else
         {
             // TODO - check deliveryId has been incremented by one
-            _currentDeliveryId = transfer.getDeliveryId();
-            // TODO - check link handle valid and a receiver
-            TransportReceiver transportReceiver = (TransportReceiver) getLinkFromRemoteHandle(transfer.getHandle());
+            UnsignedInteger deliveryId = transfer.getDeliveryId();
             ReceiverImpl receiver = transportReceiver.getReceiver();
-            Binary deliveryTag = transfer.getDeliveryTag();
-            delivery = receiver.delivery(deliveryTag.getArray(), deliveryTag.getArrayOffset(),
-                                                      deliveryTag.getLength());
-            TransportDelivery transportDelivery = new TransportDelivery(_currentDeliveryId, delivery, transportReceiver);
-            delivery.setTransportDelivery(transportDelivery);
-            _unsettledIncomingDeliveriesById.put(_currentDeliveryId, delivery);
+            delivery = receiver.delivery(transfer.getDeliveryTag());
+            delivery.bindTransportDelivery(deliveryId, transportReceiver);
+            if(!Boolean.TRUE.equals(transfer.getSettled()))
+            {
+                // no disposition will ever arrive for a delivery the sender has already settled
+                _unsettledIncomingDeliveriesById.put(deliveryId, delivery);
+            }
+            transportReceiver.setIncomingDelivery(delivery);
         }
         if( transfer.getState()!=null ) 
         {
             delivery.setRemoteDeliveryState(transfer.getState());
         }
         _unsettledIncomingSize++;
-        // TODO - should this be a copy?
-        if(payload != null)
+        // each transfer frame holds a unit of the window until the application has consumed its data
+        _incomingWindowSize = _incomingWindowSize.subtract(UnsignedInteger.ONE);
+        if(payload != null && payload.getLength() != 0)
         {
-            if(delivery.getDataLength() == 0)
-            {
-                delivery.setData(payload.getArray());
-                delivery.setDataLength(payload.getLength());
-                delivery.setDataOffset(payload.getArrayOffset());
-            }
-            else
-            {
-                byte[] data = new byte[delivery.getDataLength() + payload.getLength()];
-                System.arraycopy(delivery.getData(), delivery.getDataOffset(), data, 0, delivery.getDataLength());
-                System.arraycopy(payload.getArray(), payload.getArrayOffset(), data, delivery.getDataLength(), payload.getLength());
-                delivery.setData(data);
-                delivery.setDataOffset(0);
-                delivery.setDataLength(data.length);
-            }
+            delivery.addIncoming(payload);
+        }
+        else
+        {
+            incomingConsumed(1);
         }
         delivery.addIOWork();
 
@@ -262,7 +255,7 @@ class TransportSession
         if(!(transfer.getMore() || transfer.getAborted()))
         {
             delivery.setComplete();
-            _incomingWindowSize = _incomingWindowSize.subtract(UnsignedInteger.ONE);
+            transportReceiver.setIncomingDelivery(null);
             delivery.getLink().getTransportLink().decrementLinkCredit();
             delivery.getLink().getTransportLink().incrementDeliveryCount();
         }
@@ -362,6 +355,13 @@ class TransportSession
 
     }
 
+    UnsignedInteger allocateOutgoingDeliveryId()
+    {
+        UnsignedInteger deliveryId = _nextOutgoingDeliveryId;
+        _nextOutgoingDeliveryId = _nextOutgoingDeliveryId.add(UnsignedInteger.ONE);
+        return deliveryId;
+    }
+
     void incrementOutgoingId()
     {
         _nextOutgoingId = _nextOutgoingId.add(UnsignedInteger.ONE);
@@ -371,18 +371,34 @@ class TransportSession
     {
         if(transportDelivery.getTransportLink().getLink() instanceof ReceiverImpl)
         {
-            _incomingWindowSize = _incomingWindowSize.add( UnsignedInteger.valueOf(transportDelivery.getSessionSize()));
-            _incomingWindowSizeChange = true;
-            getSession().modified();
+            _unsettledIncomingDeliveriesById.remove(transportDelivery.getDeliveryId());
         }
         else
         {
+            _unsettledOutgoingDeliveriesById.remove(transportDelivery.getDeliveryId());
             _outgoingWindowSize = _outgoingWindowSize.add(UnsignedInteger.valueOf(transportDelivery.getSessionSize()));
             _outgoingWindowSizeChange = true;
             getSession().modified();
         }
     }
 
+    /**
+     * Returns window for incoming transfer frames whose data has been consumed by the application.
+     * The peer is only told once half the window has been returned, since it cannot have stalled
+     * before then.
+     */
+    void incomingConsumed(int frames)
+    {
+        _incomingWindowSize = _incomingWindowSize.add(UnsignedInteger.valueOf(frames));
+        _incomingWindowReleased += frames;
+        if(_incomingWindowReleased >= TransportImpl.SESSION_WINDOW / 2)
+        {
+            _incomingWindowReleased = 0;
+            _incomingWindowSizeChange = true;
+            getSession().modified();
+        }
+    }
+
     public boolean clearIncomingWindowResize()
     {
         if(_incomingWindowSizeChange)
@@ -429,6 +445,51 @@ class TransportSession
         _endReceived = true;
     }
 
+    public boolean endSent()
+    {
+        return _endSent;
+    }
+
+    public void sentEnd()
+    {
+        _endSent = true;
+    }
+
+    /**
+     * @return whether an end has been both sent and received, retiring the channel and every handle
+     */
+    boolean isRetired()
+    {
+        return _endSent && _endReceived;
+    }
+
+    /**
+     * Unbinds from the session, and from the links still holding handles in it, once the session is
+     * retired and the application has freed it.
+     */
+    void unbindIfRetired()
+    {
+        if(isRetired() && _session.isFreed())
+        {
+            for(int i = 0; i < _localHandleMap.length; i++)
+            {
+                unbind(_localHandleMap[i]);
+                unbind(_remoteHandleMap[i]);
+                _localHandleMap[i] = null;
+                _remoteHandleMap[i] = null;
+            }
+            _session.setTransportSession(null);
+        }
+    }
+
+    private void unbind(TransportLink transportLink)
+    {
+        if(transportLink != null)
+        {
+            transportLink.unbind();
+        }
+    }
+
     public boolean beginSent()
     {
         return _beginSent;
@@ -0,0 +1,96 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.ServerSocket;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncDriverImplTest
+{
+    private AsyncDriverImpl _driver;
+
+    @After
+    public void tearDown()
+    {
+        _driver.destroy();
+    }
+
+    @Test(timeout = 30000)
+    public void testTransfer() throws Exception
+    {
+        _driver = new AsyncDriverImpl();
+        int port = DriverHarness.freePort();
+        _driver.createListener("127.0.0.1", port, "server");
+        Connector<String> client = _driver.createConnector("127.0.0.1", port, "client");
+        DriverHarness harness = new DriverHarness(_driver, client, 300, 100000);
+        harness.transfer(20000);
+        assertEquals(300, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testInputResumesWhenApplicationCatchesUp() throws Exception
+    {
+        _driver = new AsyncDriverImpl();
+        int port = DriverHarness.freePort();
+        _driver.createListener("127.0.0.1", port, "server");
+        Connector<String> client = _driver.createConnector("127.0.0.1", port, "client");
+        DriverHarness harness = new DriverHarness(_driver, client, 100, 10000);
+        harness.maxBufferedInput = 20000;
+        harness.reading = false;
+        harness.run(500);
+        assertEquals(0, harness.received);
+        assertEquals(0, ((AbstractConnectorImpl<String>) harness.server).getTransport().capacity());
+
+        // read outside the driver, which must then hand the connector back to read the rest
+        harness.read();
+        harness.reading = true;
+        harness.transfer(20000);
+        assertEquals(100, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testListenerOnPortInUse() throws Exception
+    {
+        _driver = new AsyncDriverImpl();
+        ServerSocket socket = new ServerSocket(0);
+        try
+        {
+            assertNull(_driver.createListener("127.0.0.1", socket.getLocalPort(), "server"));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnixSocketUnsupported() throws Exception
+    {
+        _driver = new AsyncDriverImpl();
+        _driver.createConnector("/tmp/proton.sock", 0, "client");
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.EnumSet;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Driver;
+import org.apache.qpid.proton.driver.DriverLoop;
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.SaslServer;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.impl.ConnectionImpl;
+
+/**
+ * Sends messages from a client connector to a server connector over a driver, servicing only
+ * the connectors the driver hands back, as an application would.
+ */
+class DriverHarness
+{
+    private static final EnumSet<EndpointState> UNINITIALIZED = EnumSet.of(EndpointState.UNINITIALIZED);
+    private static final EnumSet<EndpointState> ACTIVE = EnumSet.of(EndpointState.ACTIVE);
+
+    final DriverLoop driver;
+    final Connector<String> client;
+    final ConnectionImpl clientConnection = new ConnectionImpl();
+    final Sender sender;
+    Connector<String> server;
+    ConnectionImpl serverConnection;
+    Receiver receiver;
+
+    /** whether the server reads deliveries as they arrive */
+    boolean reading = true;
+    /** the input the server's transport buffers before pushing back, zero for no limit */
+    int maxBufferedInput;
+
+    private final int _count;
+    private final byte[] _message;
+    private final byte[] _buffer;
+    private int _offset;
+    int sent;
+    int received;
+
+    DriverHarness(DriverLoop driver, Connector<String> client, int count, int size)
+    {
+        this.driver = driver;
+        this.client = client;
+        _count = count;
+        _message = new byte[size];
+        _buffer = new byte[size + 1];
+        for(int i = 0; i < size; i++)
+        {
+            _message[i] = (byte) i;
+        }
+        client.sasl().setMechanisms(new String[]{"ANONYMOUS"});
+        client.setConnection(clientConnection);
+        clientConnection.open();
+        Session session = clientConnection.session();
+        session.open();
+        sender = session.sender("link");
+        sender.open();
+        client.process();
+    }
+
+    /**
+     * Uses a connector created directly rather than accepted from a listener as the server.
+     */
+    void setServer(Connector<String> connector)
+    {
+        server = connector;
+        server.sasl().setMechanisms(new String[]{"ANONYMOUS"});
+        serverConnection = new ConnectionImpl();
+        server.setConnection(serverConnection);
+        if(maxBufferedInput > 0)
+        {
+            ((AbstractConnectorImpl<String>) server).getTransport().setMaxBufferedInput(maxBufferedInput);
+        }
+    }
+
+    /**
+     * Services the driver until every message has been received.
+     */
+    void transfer(long timeout)
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        while(received < _count)
+        {
+            if(System.currentTimeMillis() > deadline)
+            {
+                throw new AssertionError("timed out having sent " + sent + " and received " + received);
+            }
+            poll(50);
+        }
+    }
+
+    /**
+     * Services the driver for the given time.
+     */
+    void run(long time)
+    {
+        long deadline = System.currentTimeMillis() + time;
+        while(System.currentTimeMillis() < deadline)
+        {
+            poll(10);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void poll(int timeout)
+    {
+        driver.doWait(timeout);
+        Listener<String> listener;
+        while(driver instanceof Driver && (listener = ((Driver) driver).listener()) != null)
+        {
+            Connector<String> connector = listener.accept();
+            if(connector != null)
+            {
+                setServer(connector);
+            }
+        }
+        Connector<String> connector;
+        while((connector = driver.connector()) != null)
+        {
+            connector.process();
+            service(connector);
+        }
+        // processing may itself have brought in work, which the application finds when it next
+        // looks at its connections
+        if(server != null)
+        {
+            service(server);
+        }
+        service(client);
+    }
+
+    private void service(Connector<String> connector)
+    {
+        if(connector == server ? serviceServer() : serviceClient())
+        {
+            connector.process();
+        }
+    }
+
+    /**
+     * @return true if the server did anything that its connector has to act on
+     */
+    private boolean serviceServer()
+    {
+        boolean worked = false;
+        Sasl sasl = server.sasl();
+        if(sasl.getState() == Sasl.SaslState.PN_SASL_IDLE && sasl.getRemoteMechanisms()[0] != null)
+        {
+            ((SaslServer) sasl).done(Sasl.PN_SASL_OK);
+            worked = true;
+        }
+        if(serverConnection.getLocalState() == EndpointState.UNINITIALIZED
+           && serverConnection.getRemoteState() == EndpointState.ACTIVE)
+        {
+            serverConnection.open();
+            worked = true;
+        }
+        Session session;
+        while((session = serverConnection.sessionHead(UNINITIALIZED, ACTIVE)) != null)
+        {
+            session.open();
+            worked = true;
+        }
+        Link link;
+        while((link = serverConnection.linkHead(UNINITIALIZED, ACTIVE)) != null)
+        {
+            link.open();
+            receiver = (Receiver) link;
+            receiver.flow(_count);
+            worked = true;
+        }
+        return reading ? read() || worked : worked;
+    }
+
+    /**
+     * Reads the messages that have arrived, as the application would outside the driver.
+     *
+     * @return true if anything was read
+     */
+    boolean read()
+    {
+        boolean worked = false;
+        Delivery delivery;
+        while(receiver != null && (delivery = receiver.current()) != null)
+        {
+            int read;
+            while((read = receiver.recv(_buffer, _offset, _buffer.length - _offset)) > 0)
+            {
+                _offset += read;
+                worked = true;
+            }
+            if(_offset < _message.length)
+            {
+                // the rest of it is still to come
+                break;
+            }
+            if(_offset != _message.length)
+            {
+                throw new AssertionError("received " + _offset + " bytes, expected " + _message.length);
+            }
+            _offset = 0;
+            delivery.settle();
+            received++;
+        }
+        return worked;
+    }
+
+    private boolean serviceClient()
+    {
+        boolean worked = false;
+        while(sent < _count && sender.getCredit() > 0)
+        {
+            worked = true;
+            byte[] tag = String.valueOf(sent).getBytes();
+            sender.delivery(tag, 0, tag.length);
+            sender.send(_message, 0, _message.length);
+            sender.advance();
+            sent++;
+        }
+        return worked;
+    }
+
+    static int freePort() throws IOException
+    {
+        ServerSocket socket = new ServerSocket(0);
+        try
+        {
+            return socket.getLocalPort();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.DriverLoop;
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.SaslServer;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.impl.ConnectionImpl;
+import org.apache.qpid.proton.engine.impl.TransportImpl;
+import org.junit.After;
+import org.junit.Test;
+
+public class DriverImplTest
+{
+    private DriverImpl _driver;
+
+    @After
+    public void tearDown()
+    {
+        if(_driver != null)
+        {
+            _driver.destroy();
+        }
+    }
+
+    private DriverHarness harness(int count, int size) throws Exception
+    {
+        _driver = new DriverImpl();
+        int port = DriverHarness.freePort();
+        _driver.createListener("127.0.0.1", port, "server");
+        Connector<String> client = _driver.createConnector("127.0.0.1", port, "client");
+        return new DriverHarness(_driver, client, count, size);
+    }
+
+    @Test(timeout = 30000)
+    public void testTransfer() throws Exception
+    {
+        DriverHarness harness = harness(300, 1000);
+        harness.transfer(20000);
+        assertEquals(300, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testHeldBackOutputIsFlushedByDeadline() throws Exception
+    {
+        // far more than is ever pending, so only the deadline flushes the output
+        DriverHarness harness = harness(20, 100);
+        harness.client.setFlushPolicy(1024 * 1024, 20000);
+        harness.transfer(10000);
+        assertEquals(20, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testHeldBackOutputIsFlushedAtThreshold() throws Exception
+    {
+        DriverHarness harness = harness(100, 10000);
+        // the link is set up first, as its frames are smaller than the threshold
+        long deadline = System.currentTimeMillis() + 10000;
+        while(harness.receiver == null)
+        {
+            assertTrue("timed out setting up the link", System.currentTimeMillis() < deadline);
+            harness.poll(50);
+        }
+        // a deadline longer than the test, so only messages larger than the threshold are flushed
+        harness.client.setFlushPolicy(4096, 60L * 1000 * 1000);
+        harness.transfer(20000);
+        assertEquals(100, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testCommandsRunInOrderOnServicingThread() throws Exception
+    {
+        final DriverHarness harness = harness(1, 100);
+        harness.transfer(10000);
+
+        // more than run in a single pass, so the connector has to be scheduled again
+        final int count = 3000;
+        final List<Integer> ran = Collections.synchronizedList(new ArrayList<Integer>());
+        final Thread servicing = Thread.currentThread();
+        final boolean[] elsewhere = new boolean[1];
+        Thread producer = new Thread()
+        {
+            public void run()
+            {
+                for(int i = 0; i < count; i++)
+                {
+                    final int value = i;
+                    harness.client.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            elsewhere[0] |= Thread.currentThread() != servicing;
+                            ran.add(value);
+                        }
+                    });
+                }
+            }
+        };
+        producer.start();
+        producer.join();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while(ran.size() < count)
+        {
+            assertTrue("only " + ran.size() + " commands ran", System.currentTimeMillis() < deadline);
+            harness.poll(50);
+        }
+        assertFalse(elsewhere[0]);
+        for(int i = 0; i < count; i++)
+        {
+            assertEquals(i, ran.get(i).intValue());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testConnectorsSpreadAcrossLoops() throws Exception
+    {
+        _driver = new DriverImpl(4);
+        int port = DriverHarness.freePort();
+        _driver.createListener("127.0.0.1", port, "server");
+        Set<Connector<?>> created = new HashSet<Connector<?>>();
+        for(int i = 0; i < 8; i++)
+        {
+            created.add(_driver.createConnector("127.0.0.1", port, "client" + i));
+        }
+
+        DriverLoop[] loops = _driver.getLoops();
+        assertEquals(4, loops.length);
+        Set<Connector<?>> handedBack = new HashSet<Connector<?>>();
+        for(DriverLoop loop : loops)
+        {
+            assertTrue("the driver's own selector is left to its listeners", loop != _driver);
+            assertEquals(2, loop.getConnectorCount());
+            // connectors created on another thread are returned by the loop they were given to
+            Connector<?> connector;
+            while((connector = loop.connector()) != null)
+            {
+                assertTrue(created.contains(connector));
+                assertTrue("connector returned by two loops", handedBack.add(connector));
+            }
+        }
+        assertEquals(created, handedBack);
+    }
+
+    @Test(timeout = 30000)
+    public void testMessageLargerThanWriteBuffer() throws Exception
+    {
+        // nothing comes back from the peer until it has the whole message
+        DriverHarness harness = harness(1, 200000);
+        harness.transfer(10000);
+        assertEquals(1, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testTransferBeyondReadQuota() throws Exception
+    {
+        // each pass reads at most pn.read_quota bytes, so the rest must be read on later passes
+        DriverHarness harness = harness(50, 20000);
+        harness.transfer(20000);
+        assertEquals(50, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testTransferOverUnixSocket() throws Exception
+    {
+        assumeTrue(hasUnixSockets());
+        File path = File.createTempFile("proton", ".sock");
+        path.delete();
+        try
+        {
+            _driver = new DriverImpl();
+            _driver.createListener(path.getAbsolutePath(), 0, "server");
+            Connector<String> client = _driver.createConnector(path.getAbsolutePath(), 0, "client");
+            DriverHarness harness = new DriverHarness(_driver, client, 300, 1000);
+            harness.transfer(20000);
+            assertEquals(300, harness.received);
+        }
+        finally
+        {
+            path.delete();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testInputResumesWhenApplicationCatchesUp() throws Exception
+    {
+        DriverHarness harness = harness(100, 10000);
+        harness.maxBufferedInput = 20000;
+        harness.reading = false;
+        harness.run(500);
+        assertEquals(0, harness.received);
+        assertEquals(0, ((ConnectorImpl<String>) harness.server).getTransport().capacity());
+
+        // read outside the driver, which must then notice the room and read from the peer again
+        harness.read();
+        harness.reading = true;
+        harness.transfer(20000);
+        assertEquals(100, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testInputHeldForSaslOutcomeIsNotPolled() throws Exception
+    {
+        _driver = new DriverImpl();
+        int port = DriverHarness.freePort();
+        _driver.createListener("127.0.0.1", port, "server");
+
+        // a client that pipelines far more than the connector buffers behind its SASL init
+        TransportImpl transport = new TransportImpl();
+        Sasl sasl = transport.sasl();
+        sasl.client();
+        sasl.setMechanisms(new String[]{"ANONYMOUS"});
+        ConnectionImpl connection = new ConnectionImpl();
+        transport.bind(connection);
+        connection.open();
+        Session session = connection.session();
+        session.open();
+        char[] name = new char[2000];
+        for(int i = 0; i < 500; i++)
+        {
+            Arrays.fill(name, (char) ('a' + i % 26));
+            session.sender(i + new String(name)).open();
+        }
+        ByteArrayOutputStream firstFlight = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while((length = transport.output(buffer, 0, buffer.length)) > 0)
+        {
+            firstFlight.write(buffer, 0, length);
+        }
+        final byte[] bytes = firstFlight.toByteArray();
+
+        final Socket socket = new Socket("127.0.0.1", port);
+        final boolean[] written = new boolean[1];
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(bytes);
+                    out.flush();
+                    written[0] = true;
+                }
+                catch(Exception e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+
+        Connector<String> server = null;
+        ConnectionImpl serverConnection = new ConnectionImpl();
+        int handedBack = 0;
+        long decideAt = System.currentTimeMillis() + 500;
+        long deadline = decideAt + 10000;
+        while(!written[0] || serverConnection.getRemoteState() != EndpointState.ACTIVE)
+        {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            _driver.doWait(10);
+            Listener<?> listener;
+            while((listener = _driver.listener()) != null)
+            {
+                @SuppressWarnings("unchecked")
+                Connector<String> accepted = (Connector<String>) listener.accept();
+                if(accepted != null)
+                {
+                    server = accepted;
+                    server.sasl().setMechanisms(new String[]{"ANONYMOUS"});
+                    server.setConnection(serverConnection);
+                }
+            }
+            Connector<?> connector;
+            while((connector = _driver.connector()) != null)
+            {
+                connector.process();
+                if(server != null && server.sasl().getState() == Sasl.SaslState.PN_SASL_IDLE)
+                {
+                    assertTrue("connector handed back repeatedly awaiting the outcome", ++handedBack < 100);
+                }
+            }
+            if(server != null && server.sasl().getState() == Sasl.SaslState.PN_SASL_IDLE
+               && System.currentTimeMillis() >= decideAt)
+            {
+                ((SaslServer) server.sasl()).done(Sasl.PN_SASL_OK);
+                server.process();
+            }
+        }
+        writer.join();
+        socket.close();
+    }
+
+    static boolean hasUnixSockets()
+    {
+        try
+        {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return true;
+        }
+        catch(ClassNotFoundException e)
+        {
+            return false;
+        }
+    }
+}
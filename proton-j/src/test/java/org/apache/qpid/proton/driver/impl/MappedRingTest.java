@@ -0,0 +1,159 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedRingTest
+{
+    private static final int CAPACITY = 4096;
+
+    private File _file;
+    private RandomAccessFile _producerFile;
+    private RandomAccessFile _consumerFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _file = File.createTempFile("proton", ".ring");
+        _producerFile = new RandomAccessFile(_file, "rw");
+        _consumerFile = new RandomAccessFile(_file, "rw");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        _producerFile.close();
+        _consumerFile.close();
+        _file.delete();
+    }
+
+    // each side maps the file separately, as the two processes would
+    private MappedRing ring(RandomAccessFile file) throws Exception
+    {
+        ByteBuffer region = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, MappedRing.size(CAPACITY));
+        return new MappedRing(region, CAPACITY);
+    }
+
+    @Test
+    public void testWrapsAround() throws Exception
+    {
+        MappedRing producer = ring(_producerFile);
+        MappedRing consumer = ring(_consumerFile);
+        byte[] bytes = new byte[3000];
+        for(int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) (i * 31);
+        }
+        byte[] received = new byte[bytes.length];
+        for(int round = 0; round < 5; round++)
+        {
+            assertEquals(bytes.length, producer.write(bytes, 0, bytes.length));
+            // only as much as is left fits
+            assertEquals(CAPACITY - bytes.length, producer.write(bytes, 0, bytes.length));
+            assertEquals(0, producer.free());
+            assertEquals(CAPACITY, consumer.available());
+
+            assertEquals(bytes.length, consumer.read(received, 0, received.length));
+            assertArrayEquals(bytes, received);
+            assertEquals(CAPACITY - bytes.length, consumer.read(received, 0, received.length));
+            for(int i = 0; i < CAPACITY - bytes.length; i++)
+            {
+                assertEquals(bytes[i], received[i]);
+            }
+        }
+        assertEquals(0, consumer.available());
+        assertFalse(consumer.isClosed());
+        producer.close();
+        assertTrue(consumer.isClosed());
+    }
+
+    @Test(timeout = 60000)
+    public void testProducerAndConsumerThreads() throws Exception
+    {
+        final MappedRing producer = ring(_producerFile);
+        final MappedRing consumer = ring(_consumerFile);
+        final long total = 64L * 1024 * 1024;
+
+        Thread producerThread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                byte[] chunk = new byte[1500];
+                long sent = 0;
+                int size = 1;
+                while(sent < total)
+                {
+                    // odd sizes, so writes straddle the end of the ring at every offset
+                    size = (size + 7) % chunk.length + 1;
+                    int length = (int) Math.min(size, total - sent);
+                    for(int i = 0; i < length; i++)
+                    {
+                        chunk[i] = (byte) ((sent + i) * 31);
+                    }
+                    int offset = 0;
+                    while(offset < length)
+                    {
+                        offset += producer.write(chunk, offset, length - offset);
+                    }
+                    sent += length;
+                }
+                producer.close();
+            }
+        };
+        // a failed check leaves it blocked on a full ring
+        producerThread.setDaemon(true);
+        producerThread.start();
+
+        byte[] buffer = new byte[1000];
+        long received = 0;
+        while(true)
+        {
+            // a close seen first means every byte written is already visible
+            boolean closed = consumer.isClosed();
+            int read = consumer.read(buffer, 0, buffer.length);
+            for(int i = 0; i < read; i++)
+            {
+                assertEquals("byte " + (received + i), (byte) ((received + i) * 31), buffer[i]);
+            }
+            received += read;
+            if(closed && read == 0)
+            {
+                break;
+            }
+        }
+        producerThread.join();
+        assertEquals(total, received);
+    }
+}
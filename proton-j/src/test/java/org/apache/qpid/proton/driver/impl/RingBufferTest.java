@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RingBufferTest
+{
+    @Test
+    public void testViewsWrapAround()
+    {
+        RingBuffer ring = new RingBuffer(10);
+        ring.produced(8);
+        ring.consumed(6);
+
+        ByteBuffer[] free = ring.freeViews();
+        assertEquals(8, free[0].position());
+        assertEquals(2, free[0].remaining());
+        assertEquals(0, free[1].position());
+        assertEquals(6, free[1].remaining());
+
+        ring.produced(5);
+        ByteBuffer[] filled = ring.filledViews();
+        assertEquals(6, filled[0].position());
+        assertEquals(4, filled[0].remaining());
+        assertEquals(0, filled[1].position());
+        assertEquals(3, filled[1].remaining());
+        assertEquals(6, ring.filledOffset());
+        assertEquals(4, ring.filledContiguous());
+        assertEquals(3, ring.freeOffset());
+        assertEquals(3, ring.freeContiguous());
+    }
+
+    @Test
+    public void testEmptyRingStartsAtFront()
+    {
+        RingBuffer ring = new RingBuffer(10);
+        ring.produced(7);
+        ring.consumed(7);
+        assertEquals(0, ring.freeOffset());
+        assertEquals(10, ring.freeContiguous());
+        assertEquals(0, ring.freeViews()[1].remaining());
+    }
+
+    @Test
+    public void testDataSurvivesRandomUse()
+    {
+        RingBuffer ring = new RingBuffer(10);
+        Random random = new Random(1);
+        int written = 0;
+        int read = 0;
+        for(int i = 0; i < 100000; i++)
+        {
+            if(random.nextBoolean())
+            {
+                int length = random.nextInt(ring.freeContiguous() + 1);
+                for(int j = 0; j < length; j++)
+                {
+                    ring.array()[ring.freeOffset() + j] = (byte) (written + j);
+                }
+                ring.produced(length);
+                written += length;
+                ByteBuffer[] free = ring.freeViews();
+                assertEquals(ring.free(), free[0].remaining() + free[1].remaining());
+            }
+            else
+            {
+                ByteBuffer[] filled = ring.filledViews();
+                assertEquals(ring.size(), filled[0].remaining() + filled[1].remaining());
+                int length = random.nextInt(ring.size() + 1);
+                for(int j = 0; j < length; j++)
+                {
+                    ByteBuffer view = filled[0].hasRemaining() ? filled[0] : filled[1];
+                    assertEquals((byte) (read + j), view.get());
+                }
+                ring.consumed(length);
+                read += length;
+            }
+        }
+        assertEquals(written - read, ring.size());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.SharedMemoryDriver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedMemoryDriverImplTest
+{
+    private SharedMemoryDriver _driver = new SharedMemoryDriverImpl();
+    private File _file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _file = File.createTempFile("proton", ".shm");
+    }
+
+    @After
+    public void tearDown()
+    {
+        _driver.destroy();
+        _file.delete();
+    }
+
+    private DriverHarness harness(int count, int size, int maxBufferedInput)
+    {
+        Connector<String> server = _driver.createServerConnector(_file, "server");
+        Connector<String> client = _driver.createConnector(_file, "client");
+        DriverHarness harness = new DriverHarness(_driver, client, count, size);
+        harness.maxBufferedInput = maxBufferedInput;
+        harness.setServer(server);
+        return harness;
+    }
+
+    @Test(timeout = 30000)
+    public void testTransfer() throws Exception
+    {
+        DriverHarness harness = harness(300, 100000, 0);
+        harness.transfer(20000);
+        assertEquals(300, harness.received);
+    }
+
+    @Test(timeout = 30000)
+    public void testInputResumesWhenApplicationCatchesUp() throws Exception
+    {
+        DriverHarness harness = harness(100, 10000, 20000);
+        harness.reading = false;
+        harness.run(500);
+        assertEquals(0, harness.received);
+        assertEquals(0, ((AbstractConnectorImpl<String>) harness.server).getTransport().capacity());
+
+        // read outside the driver, which must then hand the connector back to read the rest
+        harness.read();
+        harness.reading = true;
+        harness.transfer(20000);
+        assertEquals(100, harness.received);
+    }
+
+    @Test
+    public void testOpenFileNotCreatedByServer() throws Exception
+    {
+        FileOutputStream out = new FileOutputStream(_file);
+        out.write(new byte[128]);
+        out.close();
+        assertNull(_driver.createConnector(_file, "client"));
+    }
+
+    @Test
+    public void testCreateInMissingDirectory() throws Exception
+    {
+        assertNull(_driver.createServerConnector(new File(_file, "connection"), "server"));
+    }
+}
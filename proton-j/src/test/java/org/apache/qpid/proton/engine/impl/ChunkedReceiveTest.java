@@ -0,0 +1,123 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Test;
+
+public class ChunkedReceiveTest
+{
+    private EnginePair sendOne(byte[] payload)
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        engines.send("tag", payload);
+        engines.pump();
+        return engines;
+    }
+
+    @Test
+    public void testRecvGathersAcrossFrames()
+    {
+        byte[] payload = EnginePair.payload(100000);
+        EnginePair engines = sendOne(payload);
+
+        byte[] received = new byte[payload.length];
+        int total = 0;
+        int read;
+        while((read = engines.receiver.recv(received, total, Math.min(999, received.length - total))) > 0)
+        {
+            total += read;
+        }
+        assertEquals(payload.length, total);
+        assertArrayEquals(payload, received);
+        assertEquals(-1, engines.receiver.recv(received, 0, 1));
+    }
+
+    @Test
+    public void testRecvChunksReturnsEachFrame()
+    {
+        byte[] payload = EnginePair.payload(100000);
+        EnginePair engines = sendOne(payload);
+
+        ByteBuffer[] chunks = engines.receiver.recvChunks();
+        assertTrue("expected one chunk per frame", chunks.length > 1);
+        byte[] received = new byte[payload.length];
+        int total = 0;
+        for(ByteBuffer chunk : chunks)
+        {
+            assertTrue(chunk.isReadOnly());
+            int length = chunk.remaining();
+            chunk.get(received, total, length);
+            total += length;
+        }
+        assertEquals(payload.length, total);
+        assertArrayEquals(payload, received);
+        assertNull(engines.receiver.recvChunks());
+        assertEquals(0, engines.server.getIncomingBytes());
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testChunksAreReadOnly()
+    {
+        EnginePair engines = sendOne(EnginePair.payload(100));
+        engines.receiver.recvChunks()[0].put(0, (byte) 0);
+    }
+
+    @Test
+    public void testRecvAfterPartialRecvChunks()
+    {
+        byte[] payload = EnginePair.payload(50000);
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        engines.sender.send(payload, 0, 20000);
+        engines.pump();
+
+        ByteBuffer[] chunks = engines.receiver.recvChunks();
+        int total = 0;
+        for(ByteBuffer chunk : chunks)
+        {
+            total += chunk.remaining();
+        }
+        assertEquals(20000, total);
+        assertEquals(0, engines.receiver.recvChunks().length);
+
+        engines.sender.send(payload, 20000, 30000);
+        engines.sender.advance();
+        engines.pump();
+        byte[] rest = new byte[30000];
+        assertEquals(30000, engines.receiver.recv(rest, 0, rest.length));
+        for(int i = 0; i < rest.length; i++)
+        {
+            assertEquals(payload[20000 + i], rest[i]);
+        }
+    }
+}
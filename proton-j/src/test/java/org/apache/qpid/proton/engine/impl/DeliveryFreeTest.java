@@ -0,0 +1,53 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DeliveryFreeTest
+{
+    @Test
+    public void testFreeUnsentSenderDelivery()
+    {
+        EnginePair engines = new EnginePair().open();
+
+        DeliveryImpl delivery = engines.send("tag", EnginePair.payload(100));
+        delivery.free();
+        assertEquals(0, engines.client.getIncomingBytes());
+        engines.pump();
+    }
+
+    @Test
+    public void testFreeUnreadReceiverDelivery()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.send("tag", EnginePair.payload(100));
+        engines.pump();
+
+        assertTrue(engines.server.getIncomingBytes() >= 100);
+        engines.receiver.current().free();
+        assertEquals(0, engines.server.getIncomingBytes());
+    }
+}
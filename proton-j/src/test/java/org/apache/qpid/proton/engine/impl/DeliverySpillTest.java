@@ -0,0 +1,138 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DeliverySpillTest
+{
+    // spans several of the default one megabyte segments
+    private static final int SIZE = 2 * 1024 * 1024 + 12345;
+
+    private final DeliverySpill _spill = new DeliverySpill();
+
+    @After
+    public void tearDown()
+    {
+        _spill.close();
+    }
+
+    private byte[] fill()
+    {
+        byte[] payload = EnginePair.payload(SIZE);
+        for(int offset = 0; offset < SIZE; offset += 16000)
+        {
+            _spill.write(payload, offset, Math.min(16000, SIZE - offset));
+        }
+        assertEquals(SIZE, _spill.available());
+        return payload;
+    }
+
+    @Test
+    public void testReadAcrossSegments()
+    {
+        byte[] payload = fill();
+        ByteBuffer received = ByteBuffer.allocate(SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(7777);
+        int read;
+        while((read = _spill.read(buffer)) > 0)
+        {
+            assertEquals(read, buffer.position());
+            buffer.flip();
+            received.put(buffer);
+            buffer.clear();
+        }
+        assertEquals(0, _spill.available());
+        assertArrayEquals(payload, received.array());
+    }
+
+    @Test
+    public void testReadAllAfterPartialRead()
+    {
+        byte[] payload = fill();
+        assertEquals(1000, _spill.read(ByteBuffer.allocate(1000)));
+
+        ByteBuffer[] chunks = _spill.readAll();
+        assertEquals(3, chunks.length);
+        ByteBuffer received = ByteBuffer.allocate(SIZE - 1000);
+        for(ByteBuffer chunk : chunks)
+        {
+            received.put(chunk);
+        }
+        assertEquals(0, _spill.available());
+        for(int i = 0; i < SIZE - 1000; i++)
+        {
+            assertEquals(payload[1000 + i], received.get(i));
+        }
+    }
+
+    @Test
+    public void testWriteAfterRead()
+    {
+        byte[] payload = EnginePair.payload(5000);
+        _spill.write(payload, 0, 3000);
+        ByteBuffer received = ByteBuffer.allocate(5000);
+        assertEquals(3000, _spill.read(received));
+        assertEquals(0, _spill.read(received));
+        _spill.write(payload, 3000, 2000);
+        assertEquals(2000, _spill.read(received));
+        assertArrayEquals(payload, received.array());
+    }
+
+    @Test
+    public void testCloseDeletesFile()
+    {
+        fill();
+        assertTrue(_spill.getFile().exists());
+        _spill.close();
+        assertFalse(_spill.getFile().exists());
+    }
+
+    @Test
+    public void testFileKeptWhileSegmentsReferenced() throws InterruptedException
+    {
+        fill();
+        ByteBuffer[] chunks = _spill.readAll();
+        File file = _spill.getFile();
+        _spill.close();
+        assertTrue(file.exists());
+        assertEquals(SIZE, chunks[0].remaining() + chunks[1].remaining() + chunks[2].remaining());
+
+        chunks = null;
+        // the next spill to be closed deletes the files whose segments have since been collected
+        for(int i = 0; i < 50 && file.exists(); i++)
+        {
+            System.gc();
+            Thread.sleep(20);
+            new DeliverySpill().close();
+        }
+        assertFalse(file.exists());
+    }
+}
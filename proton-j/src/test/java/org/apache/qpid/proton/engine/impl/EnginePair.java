@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Session;
+
+/**
+ * A client connection with a sender, wired through a {@link TransportPair} to a server
+ * connection which opens whatever the client opens.
+ */
+class EnginePair
+{
+    private static final EnumSet<EndpointState> UNINITIALIZED = EnumSet.of(EndpointState.UNINITIALIZED);
+    private static final EnumSet<EndpointState> ACTIVE = EnumSet.of(EndpointState.ACTIVE);
+
+    final ConnectionImpl client = new ConnectionImpl();
+    final ConnectionImpl server = new ConnectionImpl();
+    final TransportPair pair;
+    final TransportImpl clientTransport;
+    final TransportImpl serverTransport;
+    SessionImpl clientSession;
+    SenderImpl sender;
+    ReceiverImpl receiver;
+    final Map<String, ReceiverImpl> receivers = new HashMap<String, ReceiverImpl>();
+
+    EnginePair()
+    {
+        this(0L, 0L);
+    }
+
+    EnginePair(long latency, long bandwidth)
+    {
+        pair = new TransportPair(client, server, latency, bandwidth);
+        clientTransport = (TransportImpl) pair.getClientTransport();
+        serverTransport = (TransportImpl) pair.getServerTransport();
+    }
+
+    /**
+     * Opens a connection, session and sender link, and the server's side of each.
+     */
+    EnginePair open()
+    {
+        client.open();
+        clientSession = (SessionImpl) client.session();
+        clientSession.open();
+        sender = sender("link");
+        return this;
+    }
+
+    /**
+     * Opens a further sender on the client session, and the server's receiver for it.
+     */
+    SenderImpl sender(String name)
+    {
+        SenderImpl sender = (SenderImpl) clientSession.sender(name);
+        sender.open();
+        pump();
+        return sender;
+    }
+
+    /**
+     * Exchanges frames until neither side has anything more to say.
+     *
+     * @return the number of bytes delivered
+     */
+    int pump()
+    {
+        int total = 0;
+        int moved;
+        do
+        {
+            moved = pair.pump();
+            total += moved;
+            moved += accept();
+        }
+        while(moved > 0);
+        return total;
+    }
+
+    private int accept()
+    {
+        int opened = 0;
+        if(server.getLocalState() == EndpointState.UNINITIALIZED && server.getRemoteState() == EndpointState.ACTIVE)
+        {
+            server.open();
+            opened++;
+        }
+        Session session;
+        while((session = server.sessionHead(UNINITIALIZED, ACTIVE)) != null)
+        {
+            session.open();
+            opened++;
+        }
+        Link link;
+        while((link = server.linkHead(UNINITIALIZED, ACTIVE)) != null)
+        {
+            link.open();
+            if(link instanceof ReceiverImpl)
+            {
+                receiver = (ReceiverImpl) link;
+                receivers.put(receiver.getName(), receiver);
+            }
+            opened++;
+        }
+        return opened;
+    }
+
+    DeliveryImpl send(String tag, byte[] payload)
+    {
+        DeliveryImpl delivery = (DeliveryImpl) sender.delivery(tag.getBytes(), 0, tag.length());
+        sender.send(payload, 0, payload.length);
+        sender.advance();
+        return delivery;
+    }
+
+    /**
+     * Reads and settles the receiver's current delivery.
+     *
+     * @return the bytes that had arrived, or null if there is no current delivery
+     */
+    byte[] receive()
+    {
+        Delivery delivery = receiver.current();
+        if(delivery == null)
+        {
+            return null;
+        }
+        byte[] buffer = new byte[1024];
+        int total = 0;
+        int read;
+        while((read = receiver.recv(buffer, total, buffer.length - total)) > 0)
+        {
+            total += read;
+            if(total == buffer.length)
+            {
+                byte[] bigger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, total);
+                buffer = bigger;
+            }
+        }
+        byte[] message = new byte[total];
+        System.arraycopy(buffer, 0, message, 0, total);
+        delivery.settle();
+        return message;
+    }
+
+    static byte[] payload(int size)
+    {
+        byte[] payload = new byte[size];
+        for(int i = 0; i < size; i++)
+        {
+            payload[i] = (byte) (i * 31 + 7);
+        }
+        return payload;
+    }
+}
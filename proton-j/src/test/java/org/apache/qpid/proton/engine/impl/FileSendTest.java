@@ -0,0 +1,119 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSendTest
+{
+    private File _file;
+    private RandomAccessFile _raf;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _file = File.createTempFile("proton", ".bin");
+        FileOutputStream out = new FileOutputStream(_file);
+        out.write(EnginePair.payload(200000));
+        out.close();
+        _raf = new RandomAccessFile(_file, "r");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        _raf.close();
+        _file.delete();
+    }
+
+    private static byte[] region(int position, int count)
+    {
+        byte[] region = new byte[count];
+        System.arraycopy(EnginePair.payload(200000), position, region, 0, count);
+        return region;
+    }
+
+    @Test
+    public void testSendFileRegion()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        engines.sender.send(_raf.getChannel(), 1000, 150000);
+        engines.sender.advance();
+        engines.pump();
+
+        assertArrayEquals(region(1000, 150000), engines.receive());
+    }
+
+    @Test
+    public void testSendBufferedDataBeforeFileRegion()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        byte[] header = "header".getBytes();
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        engines.sender.send(header, 0, header.length);
+        engines.sender.send(_raf.getChannel(), 0, 50000);
+        engines.sender.advance();
+        engines.pump();
+
+        byte[] expected = new byte[header.length + 50000];
+        System.arraycopy(header, 0, expected, 0, header.length);
+        System.arraycopy(region(0, 50000), 0, expected, header.length, 50000);
+        assertArrayEquals(expected, engines.receive());
+    }
+
+    @Test
+    public void testFileIsLeftOpen() throws IOException
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(2);
+        engines.pump();
+        FileChannel channel = _raf.getChannel();
+        for(int i = 0; i < 2; i++)
+        {
+            engines.sender.delivery(("tag" + i).getBytes(), 0, 4);
+            engines.sender.send(channel, i * 100000, 100000);
+            engines.sender.advance();
+        }
+        engines.pump();
+
+        assertArrayEquals(region(0, 100000), engines.receive());
+        assertArrayEquals(region(100000, 100000), engines.receive());
+        assertTrue(channel.isOpen());
+        assertEquals(200000, channel.size());
+    }
+}
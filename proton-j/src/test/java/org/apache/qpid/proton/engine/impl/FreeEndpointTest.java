@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class FreeEndpointTest
+{
+    @Test
+    public void testSenderFreedWithDeliveryQueued()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(10);
+        engines.pump();
+
+        engines.send("tag", EnginePair.payload(100));
+        engines.sender.free();
+        engines.pump();
+    }
+
+    @Test
+    public void testSessionFreedWithDeliveryQueued()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(10);
+        engines.pump();
+
+        engines.send("tag", EnginePair.payload(100));
+        engines.clientSession.free();
+        engines.pump();
+    }
+
+    @Test
+    public void testReceiverFreedBeforeTransfer()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(10);
+        engines.pump();
+
+        engines.receiver.free();
+        engines.send("tag", EnginePair.payload(100));
+        engines.pump();
+    }
+
+    @Test
+    public void testSenderFreedAfterTransfer()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(10);
+        engines.pump();
+
+        engines.send("tag", EnginePair.payload(100));
+        engines.pump();
+        engines.sender.free();
+        assertNotNull(engines.receive());
+        engines.pump();
+    }
+
+    @Test
+    public void testLinkUnboundOnceDetachedAndFreed()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.sender.close();
+        engines.pump();
+        assertNotNull(engines.sender.getTransportLink());
+
+        // freed before the detach comes back, so it is unbound when it does
+        engines.sender.free();
+        assertNotNull(engines.sender.getTransportLink());
+        engines.receiver.close();
+        engines.pump();
+        assertNull(engines.sender.getTransportLink());
+
+        // detached both ways, so freeing unbinds at once
+        assertNotNull(engines.receiver.getTransportLink());
+        engines.receiver.free();
+        assertNull(engines.receiver.getTransportLink());
+    }
+
+    @Test
+    public void testDetachedLinkStaysBoundUntilFreed()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.sender.close();
+        engines.receiver.close();
+        engines.pump();
+
+        assertNotNull(engines.sender.getTransportLink());
+        assertNotNull(engines.sender.getSession().getTransportSession());
+    }
+
+    @Test
+    public void testSessionUnboundOnceEndedAndFreed()
+    {
+        EnginePair engines = new EnginePair().open();
+        SessionImpl serverSession = engines.receiver.getSession();
+        engines.clientSession.close();
+        serverSession.close();
+        engines.pump();
+        assertNotNull(engines.clientSession.getTransportSession());
+
+        // the links were never detached, but the end retired their handles
+        engines.clientSession.free();
+        assertNull(engines.clientSession.getTransportSession());
+        assertNull(engines.sender.getTransportLink());
+
+        serverSession.free();
+        assertNull(serverSession.getTransportSession());
+        assertNull(engines.receiver.getTransportLink());
+    }
+
+    @Test
+    public void testSenderUnboundWithDeliveryQueued()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.close();
+        engines.pump();
+
+        DeliveryImpl delivery = engines.send("tag", EnginePair.payload(100));
+        engines.sender.close();
+        engines.pump();
+        assertNotNull(engines.client.getTransportSenderWorkHead());
+
+        engines.sender.free();
+        assertNull(engines.sender.getTransportLink());
+        assertNull(delivery.getTransportWorkNext());
+        assertNull(engines.client.getTransportSenderWorkHead());
+        engines.pump();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.qpid.proton.framing.TransportFrame;
+import org.apache.qpid.proton.type.transport.Disposition;
+import org.junit.Test;
+
+public class InterleaveTest
+{
+    /**
+     * Moves a single output batch of the given size from the client to the server.
+     */
+    private static void transferBatch(EnginePair engines, int size)
+    {
+        byte[] batch = new byte[size];
+        int length = engines.clientTransport.output(batch, 0, size);
+        engines.serverTransport.input(batch, 0, length);
+    }
+
+    /**
+     * Reads whatever has arrived of the receiver's current delivery.
+     *
+     * @return whether the whole delivery has arrived
+     */
+    private static boolean complete(ReceiverImpl receiver)
+    {
+        byte[] buffer = new byte[4096];
+        int read;
+        do
+        {
+            read = receiver.recv(buffer, 0, buffer.length);
+        }
+        while(read > 0);
+        return read < 0;
+    }
+
+    @Test
+    public void testSmallDeliveryIsNotHeldBehindLargeOne()
+    {
+        EnginePair engines = new EnginePair().open();
+        SenderImpl other = engines.sender("other");
+        engines.receivers.get("link").flow(1);
+        engines.receivers.get("other").flow(1);
+        engines.pump();
+
+        engines.send("large", EnginePair.payload(200000));
+        other.delivery("small".getBytes(), 0, 5);
+        other.send(EnginePair.payload(10), 0, 10);
+        other.advance();
+        transferBatch(engines, 64 * 1024);
+
+        ReceiverImpl small = engines.receivers.get("other");
+        assertNotNull(small.current());
+        assertTrue(complete(small));
+        ReceiverImpl large = engines.receivers.get("link");
+        assertNotNull(large.current());
+        assertFalse(complete(large));
+
+        engines.pump();
+        assertTrue(complete(large));
+    }
+
+    @Test
+    public void testDeliveryCompletesWhenSenderAdvances()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(2);
+        engines.pump();
+
+        engines.sender.delivery("first".getBytes(), 0, 5);
+        engines.sender.send(EnginePair.payload(5), 0, 5);
+        engines.pump();
+        assertNotNull(engines.receiver.current());
+        assertFalse(complete(engines.receiver));
+
+        engines.sender.advance();
+        engines.pump();
+        assertTrue(complete(engines.receiver));
+        engines.receiver.current().settle();
+
+        engines.send("second", EnginePair.payload(5));
+        engines.pump();
+        assertEquals("second", new String(engines.receiver.current().getTag()));
+        assertArrayEquals(EnginePair.payload(5), engines.receive());
+    }
+
+    @Test
+    public void testControlFramesAreNotHeldBehindData()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(2);
+        engines.pump();
+        DeliveryImpl first = engines.send("first", EnginePair.payload(10));
+        engines.pump();
+        engines.receive();
+        engines.pump();
+
+        final int[] dispositions = new int[1];
+        engines.clientTransport.setProtocolTracer(new ProtocolTracer()
+        {
+            public void receivedFrame(TransportFrame transportFrame)
+            {
+            }
+
+            public void sentFrame(TransportFrame transportFrame)
+            {
+                if(transportFrame.getBody() instanceof Disposition)
+                {
+                    dispositions[0]++;
+                }
+            }
+        });
+        engines.send("large", EnginePair.payload(500000));
+        first.settle();
+        transferBatch(engines, 64 * 1024);
+        assertEquals(1, dispositions[0]);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.framing.TransportFrame;
+import org.junit.Test;
+
+public class NumericTagTest
+{
+    private void transferNumbered(EnginePair engines, int count)
+    {
+        engines.receiver.flow(count);
+        engines.pump();
+        byte[] payload = EnginePair.payload(10);
+        for(int i = 0; i < count; i++)
+        {
+            Delivery sent = engines.sender.delivery();
+            engines.sender.send(payload, 0, payload.length);
+            engines.sender.advance();
+            engines.pump();
+
+            byte[] tag = engines.receiver.current().getTag();
+            assertEquals(i < 256 ? 1 : 2, tag.length);
+            long value = 0;
+            for(byte b : tag)
+            {
+                value = (value << 8) | (b & 0xff);
+            }
+            assertEquals(i, value);
+            assertArrayEquals(tag, sent.getTag());
+            assertArrayEquals(payload, engines.receive());
+        }
+    }
+
+    @Test
+    public void testGeneratedTagsAreSequentialAndCompact()
+    {
+        transferNumbered(new EnginePair().open(), 300);
+    }
+
+    @Test
+    public void testGeneratedTagsWithProtocolTracer()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.clientTransport.setProtocolTracer(new ProtocolTracer()
+        {
+            public void receivedFrame(TransportFrame transportFrame)
+            {
+            }
+
+            public void sentFrame(TransportFrame transportFrame)
+            {
+            }
+        });
+        transferNumbered(engines, 300);
+    }
+
+    @Test
+    public void testTagOffsetAndLengthAreHonoured()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        byte[] tag = "xtagy".getBytes();
+        Delivery sent = engines.sender.delivery(tag, 1, 3);
+        engines.sender.send(new byte[1], 0, 1);
+        engines.sender.advance();
+        engines.pump();
+
+        assertArrayEquals("tag".getBytes(), sent.getTag());
+        assertArrayEquals("tag".getBytes(), engines.receiver.current().getTag());
+    }
+}
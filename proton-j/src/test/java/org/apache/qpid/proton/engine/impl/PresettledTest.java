@@ -0,0 +1,110 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.qpid.proton.framing.TransportFrame;
+import org.apache.qpid.proton.type.messaging.Accepted;
+import org.apache.qpid.proton.type.transport.Disposition;
+import org.apache.qpid.proton.type.transport.SenderSettleMode;
+import org.junit.Test;
+
+public class PresettledTest
+{
+    private EnginePair open()
+    {
+        EnginePair engines = new EnginePair();
+        engines.client.open();
+        engines.clientSession = (SessionImpl) engines.client.session();
+        engines.clientSession.open();
+        engines.sender = (SenderImpl) engines.clientSession.sender("link");
+        engines.sender.setSenderSettleMode(SenderSettleMode.SETTLED);
+        engines.sender.open();
+        engines.pump();
+        engines.receiver.flow(100);
+        engines.pump();
+        return engines;
+    }
+
+    @Test
+    public void testDeliveryIsSettledWhenSent()
+    {
+        EnginePair engines = open();
+        DeliveryImpl delivery = engines.send("tag", EnginePair.payload(100));
+        assertTrue(delivery.isSettled());
+        assertEquals(0, engines.sender.getUnsettled());
+        engines.pump();
+
+        DeliveryImpl received = engines.receiver.current();
+        assertTrue(received.remotelySettled());
+        assertArrayEquals(EnginePair.payload(100), engines.receive());
+    }
+
+    @Test
+    public void testReceiverSettlementWritesNoDisposition()
+    {
+        EnginePair engines = open();
+        final int[] dispositions = new int[1];
+        engines.serverTransport.setProtocolTracer(new ProtocolTracer()
+        {
+            public void receivedFrame(TransportFrame transportFrame)
+            {
+            }
+
+            public void sentFrame(TransportFrame transportFrame)
+            {
+                if(transportFrame.getBody() instanceof Disposition)
+                {
+                    dispositions[0]++;
+                }
+            }
+        });
+        DeliveryImpl delivery = engines.send("tag", EnginePair.payload(100));
+        engines.pump();
+        engines.receiver.current().disposition(Accepted.getInstance());
+        engines.receive();
+        engines.pump();
+
+        assertEquals(0, dispositions[0]);
+        assertNull(delivery.getRemoteState());
+        assertEquals(0, engines.sender.getUnsettled());
+    }
+
+    @Test
+    public void testManyDeliveries()
+    {
+        EnginePair engines = open();
+        for(int i = 0; i < 100; i++)
+        {
+            DeliveryImpl delivery = engines.send("tag" + i, EnginePair.payload(i * 50));
+            engines.pump();
+            assertArrayEquals(EnginePair.payload(i * 50), engines.receive());
+            delivery.free();
+        }
+        engines.pump();
+        assertEquals(0, engines.sender.getUnsettled());
+        assertNull(engines.receiver.current());
+    }
+}
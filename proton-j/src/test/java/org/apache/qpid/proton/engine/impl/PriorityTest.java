@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class PriorityTest
+{
+    private EnginePair _engines;
+    private SenderImpl _other;
+
+    /**
+     * Opens a second link, and queues bulk deliveries on the first.
+     */
+    private void queueBulk()
+    {
+        _engines = new EnginePair().open();
+        _other = _engines.sender("other");
+        _engines.receivers.get("link").flow(100);
+        _engines.receivers.get("other").flow(100);
+        _engines.pump();
+        for(int i = 0; i < 20; i++)
+        {
+            _engines.send("bulk" + i, EnginePair.payload(20000));
+        }
+    }
+
+    private DeliveryImpl sendOther(String tag)
+    {
+        DeliveryImpl delivery = (DeliveryImpl) _other.delivery(tag.getBytes(), 0, tag.length());
+        _other.send(EnginePair.payload(10), 0, 10);
+        return delivery;
+    }
+
+    private void transferBatch()
+    {
+        byte[] batch = new byte[40 * 1024];
+        int length = _engines.clientTransport.output(batch, 0, batch.length);
+        _engines.serverTransport.input(batch, 0, length);
+    }
+
+    private int bulkReceived()
+    {
+        int received = 0;
+        ReceiverImpl bulk = _engines.receivers.get("link");
+        while(bulk.current() != null)
+        {
+            bulk.advance();
+            received++;
+        }
+        return received;
+    }
+
+    @Test
+    public void testHigherPriorityLinkIsSentFirst()
+    {
+        queueBulk();
+        _other.setPriority(9);
+        sendOther("urgent");
+        _other.advance();
+        transferBatch();
+
+        ReceiverImpl urgent = _engines.receivers.get("other");
+        assertNotNull(urgent.current());
+        assertEquals("urgent", new String(urgent.current().getTag()));
+        _engines.pump();
+        assertEquals(20, bulkReceived());
+    }
+
+    @Test
+    public void testDeliveryPriorityOverridesLink()
+    {
+        queueBulk();
+        _other.setPriority(0);
+        sendOther("urgent").setPriority(9);
+        _other.advance();
+        transferBatch();
+
+        assertNotNull(_engines.receivers.get("other").current());
+    }
+
+    @Test
+    public void testLowerPriorityWaitsForHigher()
+    {
+        queueBulk();
+        DeliveryImpl background = sendOther("background");
+        _other.advance();
+        background.setPriority(0);
+        transferBatch();
+
+        assertNull(_engines.receivers.get("other").current());
+        _engines.pump();
+        assertEquals(20, bulkReceived());
+        assertNotNull(_engines.receivers.get("other").current());
+    }
+}
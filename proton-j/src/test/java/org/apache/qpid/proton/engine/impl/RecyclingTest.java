@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class RecyclingTest
+{
+    private EnginePair open(boolean recycling)
+    {
+        EnginePair engines = new EnginePair();
+        engines.client.setObjectRecycling(recycling);
+        engines.server.setObjectRecycling(recycling);
+        engines.open();
+        engines.receiver.flow(10);
+        engines.pump();
+        return engines;
+    }
+
+    /**
+     * Sends a delivery, has the receiver settle it, then settles and frees it on the sender.
+     */
+    private DeliveryImpl transfer(EnginePair engines, String tag, byte[] payload)
+    {
+        DeliveryImpl delivery = engines.send(tag, payload);
+        engines.pump();
+        assertEquals(tag, new String(engines.receiver.current().getTag()));
+        assertArrayEquals(payload, engines.receive());
+        engines.pump();
+        delivery.settle();
+        engines.pump();
+        delivery.free();
+        return delivery;
+    }
+
+    @Test
+    public void testFreedDeliveryIsReused()
+    {
+        EnginePair engines = open(true);
+        DeliveryImpl first = transfer(engines, "first", EnginePair.payload(100));
+        DeliveryImpl second = transfer(engines, "second", EnginePair.payload(200));
+        assertSame(first, second);
+        assertArrayEquals("second".getBytes(), second.getTag());
+    }
+
+    @Test
+    public void testFreedDeliveryIsNotReusedWithoutRecycling()
+    {
+        EnginePair engines = open(false);
+        DeliveryImpl first = transfer(engines, "first", EnginePair.payload(100));
+        DeliveryImpl second = transfer(engines, "second", EnginePair.payload(200));
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testUnsettledDeliveryIsNotReused()
+    {
+        EnginePair engines = open(true);
+        DeliveryImpl first = engines.send("first", EnginePair.payload(100));
+        engines.pump();
+        first.free();
+        DeliveryImpl second = engines.send("second", EnginePair.payload(100));
+        assertNotSame(first, second);
+        engines.pump();
+        assertArrayEquals(EnginePair.payload(100), engines.receive());
+    }
+
+    @Test
+    public void testManyTransfersWithRecycling()
+    {
+        EnginePair engines = open(true);
+        for(int i = 0; i < 100; i++)
+        {
+            engines.receiver.flow(1);
+            transfer(engines, "tag" + i, EnginePair.payload(i * 97));
+        }
+        assertEquals(0, engines.sender.getUnsettled());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.Session;
+import org.junit.Test;
+
+public class SaslPipeliningTest
+{
+    private static final byte[] AMQP_HEADER = {'A', 'M', 'Q', 'P', 0, 1, 0, 0};
+    private static final byte[] SASL_HEADER = {'A', 'M', 'Q', 'P', 3, 1, 0, 0};
+
+    private final ConnectionImpl _client = new ConnectionImpl();
+    private final ConnectionImpl _server = new ConnectionImpl();
+    private final TransportImpl _clientTransport = new TransportImpl();
+    private final TransportImpl _serverTransport = new TransportImpl();
+    private final Sasl _clientSasl = _clientTransport.sasl();
+    private final Sasl _serverSasl = _serverTransport.sasl();
+
+    public SaslPipeliningTest()
+    {
+        _clientSasl.client();
+        _clientSasl.setMechanisms(new String[]{"ANONYMOUS"});
+        _serverSasl.server();
+        _serverSasl.setMechanisms(new String[]{"ANONYMOUS"});
+        _clientTransport.bind(_client);
+        _serverTransport.bind(_server);
+        _client.open();
+        Session session = _client.session();
+        session.open();
+        session.sender("link").open();
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte[] pattern)
+    {
+        for(int i = 0; i + pattern.length <= length; i++)
+        {
+            int j = 0;
+            while(j < pattern.length && bytes[i + j] == pattern[j])
+            {
+                j++;
+            }
+            if(j == pattern.length)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testFirstFlightCarriesAmqpSetup()
+    {
+        byte[] flight = new byte[4096];
+        int length = _clientTransport.output(flight, 0, flight.length);
+        assertEquals(0, indexOf(flight, length, SASL_HEADER));
+        int header = indexOf(flight, length, AMQP_HEADER);
+        assertTrue("no AMQP header in the first flight", header > 0);
+        assertTrue("no frames after the AMQP header", length - header > AMQP_HEADER.length);
+
+        // the server holds back the AMQP part until the outcome is decided
+        assertEquals(header, _serverTransport.input(flight, 0, length));
+        assertEquals(EndpointState.UNINITIALIZED, _server.getRemoteState());
+        _serverSasl.done(Sasl.PN_SASL_OK);
+        assertEquals(length - header, _serverTransport.input(flight, header, length - header));
+        assertEquals(EndpointState.ACTIVE, _server.getRemoteState());
+    }
+
+    @Test
+    public void testOutcomeAndOpenInOneFlight()
+    {
+        byte[] flight = new byte[4096];
+        int length = _clientTransport.output(flight, 0, flight.length);
+        int consumed = _serverTransport.input(flight, 0, length);
+        _serverSasl.done(Sasl.PN_SASL_OK);
+        _serverTransport.input(flight, consumed, length - consumed);
+        _server.open();
+
+        byte[] reply = new byte[4096];
+        int replyLength = _serverTransport.output(reply, 0, reply.length);
+        assertTrue(indexOf(reply, replyLength, AMQP_HEADER) > 0);
+        assertEquals(replyLength, _clientTransport.input(reply, 0, replyLength));
+        assertEquals(Sasl.SaslState.PN_SASL_PASS, _clientSasl.getState());
+        assertEquals(EndpointState.ACTIVE, _client.getRemoteState());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class SpillReceiveTest
+{
+    private static final int THRESHOLD = 50000;
+
+    private EnginePair receiving(int credit)
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.server.setSpillThreshold(THRESHOLD);
+        engines.receiver.flow(credit);
+        engines.pump();
+        return engines;
+    }
+
+    @Test
+    public void testSmallDeliveryStaysOnHeap()
+    {
+        EnginePair engines = receiving(1);
+        byte[] payload = EnginePair.payload(THRESHOLD);
+        engines.send("tag", payload);
+        engines.pump();
+
+        assertNull(((DeliveryImpl) engines.receiver.current()).getSpill());
+        assertEquals(payload.length, engines.server.getIncomingBytes());
+        assertArrayEquals(payload, engines.receive());
+    }
+
+    @Test
+    public void testThresholdIsPerConnection()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        engines.send("tag", EnginePair.payload(4 * THRESHOLD));
+        engines.pump();
+
+        assertNull(((DeliveryImpl) engines.receiver.current()).getSpill());
+    }
+
+    @Test
+    public void testSwitchesToFileBeyondThreshold()
+    {
+        EnginePair engines = receiving(1);
+        byte[] payload = EnginePair.payload(4 * THRESHOLD);
+        engines.send("tag", payload);
+        engines.pump();
+
+        DeliveryImpl delivery = (DeliveryImpl) engines.receiver.current();
+        DeliverySpill spill = delivery.getSpill();
+        assertNotNull(spill);
+        assertEquals(payload.length, delivery.getDataLength());
+        assertEquals(0, engines.server.getIncomingBytes());
+
+        // reading it all closes and deletes the file
+        assertArrayEquals(payload, engines.receive());
+        assertNull(delivery.getSpill());
+        assertFalse(spill.getFile().exists());
+    }
+
+    @Test
+    public void testRecvChunksFromFile()
+    {
+        EnginePair engines = receiving(1);
+        byte[] payload = EnginePair.payload(4 * THRESHOLD);
+        engines.send("tag", payload);
+        engines.pump();
+
+        DeliveryImpl delivery = (DeliveryImpl) engines.receiver.current();
+        DeliverySpill spill = delivery.getSpill();
+        ByteBuffer[] chunks = engines.receiver.recvChunks();
+        byte[] received = new byte[payload.length];
+        int total = 0;
+        for(ByteBuffer chunk : chunks)
+        {
+            assertTrue(chunk.isReadOnly());
+            int length = chunk.remaining();
+            chunk.get(received, total, length);
+            total += length;
+        }
+        assertArrayEquals(payload, received);
+        assertNull(engines.receiver.recvChunks());
+
+        // the spill is done with, but the file stays while the mapped chunks are referenced
+        assertNull(delivery.getSpill());
+        assertTrue(spill.getFile().exists());
+    }
+
+    @Test
+    public void testSpilledFramesReleaseSessionWindow()
+    {
+        EnginePair engines = receiving(1);
+        // more frames than the session window, which unread heap data would hold back
+        byte[] payload = EnginePair.payload((TransportImpl.SESSION_WINDOW + 100) * 16 * 1024);
+        engines.send("tag", payload);
+        engines.pump();
+
+        DeliveryImpl delivery = (DeliveryImpl) engines.receiver.current();
+        assertEquals(payload.length, delivery.getDataLength());
+        assertArrayEquals(payload, engines.receive());
+    }
+
+    @Test
+    public void testFreeDeletesFile()
+    {
+        EnginePair engines = receiving(1);
+        engines.send("tag", EnginePair.payload(4 * THRESHOLD));
+        engines.pump();
+
+        DeliveryImpl delivery = (DeliveryImpl) engines.receiver.current();
+        File file = delivery.getSpill().getFile();
+        delivery.free();
+        assertNull(delivery.getSpill());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testConnectionFreeDeletesFile()
+    {
+        EnginePair engines = receiving(1);
+        engines.send("tag", EnginePair.payload(4 * THRESHOLD));
+        engines.pump();
+
+        File file = ((DeliveryImpl) engines.receiver.current()).getSpill().getFile();
+        engines.server.free();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testTransportFreeDeletesFileOfIncompleteDelivery()
+    {
+        EnginePair engines = receiving(1);
+        // a delivery the sender has not finished
+        engines.sender.delivery("partial".getBytes(), 0, 7);
+        byte[] payload = EnginePair.payload(4 * THRESHOLD);
+        engines.sender.send(payload, 0, payload.length);
+        engines.pump();
+        DeliveryImpl partial = (DeliveryImpl) engines.receiver.current();
+        File file = partial.getSpill().getFile();
+
+        engines.serverTransport.free();
+        assertNull(partial.getSpill());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testTransportFreeKeepsCompleteDelivery()
+    {
+        EnginePair engines = receiving(1);
+        byte[] payload = EnginePair.payload(4 * THRESHOLD);
+        engines.send("tag", payload);
+        engines.pump();
+
+        engines.serverTransport.free();
+        assertNotNull(((DeliveryImpl) engines.receiver.current()).getSpill());
+        assertArrayEquals(payload, engines.receive());
+    }
+}
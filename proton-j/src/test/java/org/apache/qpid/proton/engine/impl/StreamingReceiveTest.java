@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StreamingReceiveTest
+{
+    private static int drain(ReadableByteChannel channel, ByteBuffer buffer) throws IOException
+    {
+        int total = 0;
+        int read;
+        while((read = channel.read(buffer)) > 0)
+        {
+            total += read;
+        }
+        return read < 0 && total == 0 ? -1 : total;
+    }
+
+    @Test
+    public void testChannelReadsDeliveryAsItArrives() throws IOException
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        byte[] payload = EnginePair.payload(60000);
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        engines.sender.send(payload, 0, 25000);
+        engines.pump();
+
+        ReadableByteChannel channel = engines.receiver.channel();
+        ByteBuffer buffer = ByteBuffer.allocate(payload.length);
+        assertEquals(25000, drain(channel, buffer));
+        assertEquals(0, channel.read(buffer));
+
+        engines.sender.send(payload, 25000, 35000);
+        engines.sender.advance();
+        engines.pump();
+        assertEquals(35000, drain(channel, buffer));
+        assertEquals(-1, channel.read(buffer));
+        assertArrayEquals(payload, buffer.array());
+    }
+
+    @Test
+    public void testChannelStaysBoundAfterAdvance() throws IOException
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(2);
+        engines.pump();
+        engines.send("first", EnginePair.payload(1000));
+        engines.send("second", EnginePair.payload(2000));
+        engines.pump();
+
+        ReadableByteChannel channel = engines.receiver.channel();
+        engines.receiver.advance();
+        ByteBuffer buffer = ByteBuffer.allocate(1000);
+        assertEquals(1000, drain(channel, buffer));
+        assertArrayEquals(EnginePair.payload(1000), buffer.array());
+        assertArrayEquals(EnginePair.payload(2000), engines.receive());
+    }
+
+    @Test
+    public void testSlowReaderHoldsBackSender()
+    {
+        int count = TransportImpl.SESSION_WINDOW * 3 / 2;
+        int size = 10000;
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(count);
+        engines.pump();
+        List<DeliveryImpl> sent = new ArrayList<DeliveryImpl>();
+        for(int i = 0; i < count; i++)
+        {
+            sent.add(engines.send("tag" + i, EnginePair.payload(size)));
+        }
+        engines.pump();
+
+        // the unread deliveries fill the session window, and no more are sent until they are consumed
+        assertTrue(engines.server.getIncomingBytes() <= TransportImpl.SESSION_WINDOW * size);
+        assertTrue(engines.sender.getQueued() > 0);
+
+        int received = 0;
+        while(received < count)
+        {
+            byte[] message = engines.receive();
+            if(message == null)
+            {
+                // the sender's own outgoing window only reopens as it settles
+                for(DeliveryImpl delivery : sent)
+                {
+                    if(delivery.remotelySettled() && !delivery.isSettled())
+                    {
+                        delivery.settle();
+                    }
+                }
+                assertTrue("stalled having received " + received, engines.pump() > 0);
+            }
+            else
+            {
+                assertEquals(size, message.length);
+                received++;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+import org.junit.Test;
+
+public class StreamingSendTest
+{
+    @Test
+    public void testSendAfterBufferedDataWritten()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+
+        byte[] payload = EnginePair.payload(25000);
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        engines.sender.send(payload, 0, 20000);
+        engines.pump();
+        engines.sender.send(payload, 20000, 5000);
+        engines.sender.advance();
+        engines.pump();
+
+        assertArrayEquals(payload, engines.receive());
+    }
+
+    @Test
+    public void testSendInSeveralParts()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+
+        byte[] payload = EnginePair.payload(40000);
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        for(int offset = 0; offset < payload.length; offset += 7000)
+        {
+            engines.sender.send(payload, offset, Math.min(7000, payload.length - offset));
+            engines.pump();
+        }
+        engines.sender.advance();
+        engines.pump();
+
+        assertArrayEquals(payload, engines.receive());
+    }
+
+    @Test
+    public void testSendFromChannel()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+
+        byte[] payload = EnginePair.payload(100000);
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        engines.sender.send(payload, 0, 10);
+        engines.sender.send(Channels.newChannel(new ByteArrayInputStream(payload, 10, payload.length - 10)));
+        engines.sender.advance();
+        engines.pump();
+
+        assertArrayEquals(payload, engines.receive());
+    }
+
+    @Test
+    public void testSendFromChannelWithNoDataYet() throws IOException
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        byte[] payload = EnginePair.payload(30000);
+        engines.sender.delivery("tag".getBytes(), 0, 3);
+        engines.sender.send(pipe.source());
+        engines.sender.advance();
+        engines.pump();
+        assertNull(engines.receiver.current());
+
+        ByteBuffer data = ByteBuffer.wrap(payload);
+        while(data.hasRemaining())
+        {
+            pipe.sink().write(data);
+        }
+        pipe.sink().close();
+        engines.pump();
+
+        assertArrayEquals(payload, engines.receive());
+        pipe.source().close();
+    }
+}
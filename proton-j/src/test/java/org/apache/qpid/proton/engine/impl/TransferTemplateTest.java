@@ -0,0 +1,159 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.apache.qpid.proton.codec.WritableBuffer;
+import org.apache.qpid.proton.framing.TransportFrame;
+import org.apache.qpid.proton.type.AMQPDefinedTypes;
+import org.apache.qpid.proton.type.Binary;
+import org.apache.qpid.proton.type.UnsignedInteger;
+import org.apache.qpid.proton.type.transport.Transfer;
+import org.junit.Test;
+
+public class TransferTemplateTest
+{
+    private static final long[] HANDLES = {0, 7, 300};
+    private static final long[] DELIVERY_IDS = {0, 1, 255, 256, 70000};
+    private static final long[] NUMERIC_TAGS = {0, 1, 255, 256, 123456789L};
+    private static final int[] TAG_LENGTHS = {0, 1, 5, 255, 256, 300};
+
+    private final DecoderImpl _decoder = new DecoderImpl();
+    private final EncoderImpl _encoder = new EncoderImpl(_decoder);
+    private final SenderImpl _sender = (SenderImpl) new ConnectionImpl().session().sender("link");
+
+    public TransferTemplateTest()
+    {
+        AMQPDefinedTypes.registerAllTypes(_decoder);
+    }
+
+    /**
+     * Checks the template writes exactly what the encoder writes for the same transfer.
+     */
+    private void check(DeliveryImpl delivery)
+    {
+        for(long handle : HANDLES)
+        {
+            TransferTemplate template = new TransferTemplate(UnsignedInteger.valueOf(handle));
+            for(long deliveryId : DELIVERY_IDS)
+            {
+                for(int flags = 0; flags < 8; flags++)
+                {
+                    boolean settled = (flags & 1) != 0;
+                    boolean more = (flags & 2) != 0;
+                    boolean batchable = (flags & 4) != 0;
+
+                    Transfer transfer = new Transfer();
+                    transfer.setHandle(UnsignedInteger.valueOf(handle));
+                    transfer.setDeliveryId(UnsignedInteger.valueOf(deliveryId));
+                    transfer.setDeliveryTag(new Binary(delivery.getTag()));
+                    transfer.setMessageFormat(UnsignedInteger.ZERO);
+                    if(settled)
+                    {
+                        transfer.setSettled(true);
+                    }
+                    if(more)
+                    {
+                        transfer.setMore(true);
+                    }
+                    if(batchable)
+                    {
+                        transfer.setBatchable(true);
+                    }
+                    ByteBuffer encoded = ByteBuffer.allocate(2000);
+                    _encoder.setByteBuffer(encoded);
+                    _encoder.writeDescribedType(transfer);
+                    encoded.flip();
+
+                    ByteBuffer written = ByteBuffer.allocate(2000);
+                    template.write(new WritableBuffer.ByteBufferWrapper(written), UnsignedInteger.valueOf(deliveryId),
+                                   delivery, settled, more, batchable);
+                    written.flip();
+
+                    assertEquals("handle " + handle + ", delivery id " + deliveryId + ", flags " + flags,
+                                 encoded, written);
+                    _decoder.setByteBuffer(written);
+                    assertEquals(transfer.getDeliveryTag(), ((Transfer) _decoder.readObject()).getDeliveryTag());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testApplicationTags()
+    {
+        for(int length : TAG_LENGTHS)
+        {
+            check(_sender.delivery(EnginePair.payload(length), 0, length));
+        }
+    }
+
+    @Test
+    public void testNumericTags()
+    {
+        for(long tag : NUMERIC_TAGS)
+        {
+            DeliveryImpl delivery = _sender.delivery();
+            delivery.setNumericTag(tag);
+            check(delivery);
+        }
+    }
+
+    @Test
+    public void testTransfersWithAndWithoutTemplate()
+    {
+        // a protocol tracer makes the transport encode Transfer bodies instead of using the template
+        for(boolean traced : new boolean[] {false, true})
+        {
+            EnginePair engines = new EnginePair().open();
+            if(traced)
+            {
+                engines.clientTransport.setProtocolTracer(new ProtocolTracer()
+                {
+                    public void receivedFrame(TransportFrame transportFrame)
+                    {
+                    }
+
+                    public void sentFrame(TransportFrame transportFrame)
+                    {
+                    }
+                });
+            }
+            engines.receiver.flow(300);
+            engines.pump();
+            for(int i = 0; i < 300; i++)
+            {
+                engines.send("tag" + i, EnginePair.payload(i * 101));
+            }
+            engines.pump();
+            for(int i = 0; i < 300; i++)
+            {
+                assertEquals("tag" + i, new String(engines.receiver.current().getTag()));
+                assertEquals(i * 101, engines.receive().length);
+            }
+        }
+    }
+}
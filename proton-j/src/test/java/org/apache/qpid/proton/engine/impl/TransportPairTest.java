@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Transport;
+import org.junit.Test;
+
+public class TransportPairTest
+{
+    @Test
+    public void testTransfer()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+
+        byte[] payload = EnginePair.payload(100000);
+        engines.send("tag", payload);
+        engines.pump();
+
+        assertArrayEquals(payload, engines.receive());
+        assertEquals(-1L, engines.pair.getNextDue());
+    }
+
+    @Test
+    public void testReceiverCapacity()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.serverTransport.setMaxBufferedInput(50000);
+        engines.receiver.flow(4);
+        engines.pump();
+
+        byte[] payload = EnginePair.payload(100000);
+        for(int i = 0; i < 4; i++)
+        {
+            engines.send("tag" + i, payload);
+        }
+        engines.pump();
+
+        // delivery stops once the receiver has no room, the rest stays in flight
+        assertEquals(0, engines.serverTransport.capacity());
+        assertTrue(engines.server.getIncomingBytes() < 2 * 50000);
+        assertEquals(0L, engines.pair.getNextDue());
+
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        int messages = 0;
+        while(messages < 4)
+        {
+            Delivery delivery = engines.receiver.current();
+            int read = 0;
+            while(delivery != null && (read = engines.receiver.recv(buffer, 0, buffer.length)) > 0)
+            {
+                total += read;
+            }
+            if(read == Transport.END_OF_STREAM)
+            {
+                // settling advances to the next delivery
+                delivery.settle();
+                messages++;
+            }
+            else
+            {
+                assertTrue("nothing delivered once there was room", engines.pump() > 0);
+                assertTrue(engines.server.getIncomingBytes() < 2 * 50000);
+            }
+        }
+        assertEquals(4 * payload.length, total);
+    }
+
+    @Test(timeout = 10000)
+    public void testLatency() throws Exception
+    {
+        long latency = 50 * 1000000L;
+        EnginePair engines = new EnginePair(latency, 0L);
+        engines.client.open();
+        assertEquals(0, engines.pump());
+        long due = engines.pair.getNextDue();
+        assertTrue(due > 0 && due <= latency);
+
+        Thread.sleep(due / 1000000L + 1);
+        assertTrue(engines.pump() > 0);
+        assertEquals(EndpointState.ACTIVE, engines.server.getRemoteState());
+    }
+
+    @Test(timeout = 10000)
+    public void testBandwidth() throws Exception
+    {
+        EnginePair engines = new EnginePair(0L, 1000000L).open();
+        engines.receiver.flow(1);
+        engines.pump();
+
+        byte[] payload = EnginePair.payload(200000);
+        long start = System.nanoTime();
+        engines.send("tag", payload);
+        while(engines.receiver.current() == null
+              || ((DeliveryImpl) engines.receiver.current()).getDataLength() < payload.length)
+        {
+            Thread.sleep(1);
+            engines.pump();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // the first chunk goes at once, the rest at the given rate
+        assertTrue("took " + elapsed + "ns", elapsed >= 100 * 1000000L);
+        assertArrayEquals(payload, engines.receive());
+    }
+
+    @Test(timeout = 10000)
+    public void testUnboundedBandwidth() throws Exception
+    {
+        EnginePair engines = new EnginePair(0L, Long.MAX_VALUE / 2).open();
+        Thread.sleep(10);
+        engines.receiver.flow(1);
+        engines.pump();
+
+        byte[] payload = EnginePair.payload(100000);
+        engines.send("tag", payload);
+        Thread.sleep(10);
+        engines.pump();
+
+        assertArrayEquals(payload, engines.receive());
+        assertNull(engines.receiver.current());
+    }
+}
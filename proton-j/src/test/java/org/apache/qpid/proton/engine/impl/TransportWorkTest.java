@@ -0,0 +1,85 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.qpid.proton.engine.EndpointState;
+import org.junit.Test;
+
+public class TransportWorkTest
+{
+    @Test
+    public void testNoWorkOnceIdle()
+    {
+        EnginePair engines = new EnginePair().open();
+        engines.receiver.flow(1);
+        engines.pump();
+        engines.send("tag", EnginePair.payload(100));
+        engines.pump();
+        engines.receive();
+        engines.pump();
+
+        assertFalse(engines.client.hasTransportWork());
+        assertFalse(engines.server.hasTransportWork());
+        assertEquals(0, engines.pump());
+    }
+
+    @Test
+    public void testChangesAfterIdleAreSent()
+    {
+        EnginePair engines = new EnginePair().open();
+        assertEquals(0, engines.pump());
+
+        engines.receiver.flow(1);
+        assertTrue(engines.server.hasTransportWork());
+        engines.pump();
+        assertEquals(1, engines.sender.getCredit());
+
+        engines.send("tag", EnginePair.payload(100));
+        engines.pump();
+        assertArrayEquals(EnginePair.payload(100), engines.receive());
+
+        engines.sender.close();
+        engines.clientSession.close();
+        engines.client.close();
+        engines.pump();
+        assertEquals(EndpointState.CLOSED, engines.server.getRemoteState());
+    }
+
+    @Test
+    public void testFreedLinkLeavesQueuesConsistent()
+    {
+        EnginePair engines = new EnginePair().open();
+        SenderImpl other = engines.sender("other");
+        engines.receiver.flow(1);
+        other.close();
+        engines.sender.close();
+        other.free();
+        engines.pump();
+
+        assertEquals(EndpointState.CLOSED, engines.receivers.get("link").getRemoteState());
+        assertFalse(engines.client.hasTransportWork());
+    }
+}